@@ -1,37 +1,285 @@
 package Controller;
 
 import io.javalin.Javalin;
+import io.javalin.compression.CompressionStrategy;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.sse.SseClient;
+import io.javalin.json.JavalinJackson;
 import Model.Account;
+import Model.BatchResult;
 import Model.Message;
+import Model.MessageEvent;
+import Model.MessagePage;
 import Service.AccountService;
+import Service.MessageCache;
+import Service.MessageFeed;
+import Service.MessageSearchIndex;
 import Service.MessageService;
+import Service.MessageWriteBehind;
+import Util.AppConfig;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.ContentNegotiation;
+import Util.Metrics;
+import Util.ModelJsonMapper;
+import Util.ReplicaRouter;
+import Util.ResponseCompression;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 public class SocialMediaController {
 
+    /**
+     * The page size used when a client sends ?cursor= without ?limit=, and the default number of search results.
+     */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * The request attribute holding the System.nanoTime() reading taken when the request arrived.
+     */
+    private static final String REQUEST_START = "socialmedia.requestStart";
+
+    /**
+     * The cookie carrying the write version a client must read at, so it keeps seeing its own writes when its next
+     * request is served from a read replica.
+     */
+    private static final String READ_VERSION_COOKIE = "socialmedia_rv";
+
+    /**
+     * Whether unpaged list responses are streamed row by row by default. Clients can override it with ?stream=.
+     */
+    private static final boolean STREAM_LISTS = AppConfig.getBoolean("socialmedia.messages.streaming", false);
+
     private AccountService accountService = new AccountService();
     private MessageService messageService = new MessageService();
+    private ObjectMapper objectMapper = new ObjectMapper();
+    private ModelJsonMapper jsonMapper = new ModelJsonMapper(new JavalinJackson(objectMapper));
+    private ContentNegotiation negotiation = new ContentNegotiation();
+    private ResponseCompression compression = ResponseCompression.fromConfig();
 
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        String threadMode = AppConfig.getString("socialmedia.server.threads", "default");
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(jsonMapper);
+            // compressResponse replaces Javalin's gzip, which has no deflate and ignores q=0 in Accept-Encoding
+            config.compression.custom(CompressionStrategy.NONE);
+            if (!"default".equalsIgnoreCase(threadMode)) {
+                config.jetty.server(() -> new Server(createThreadPool(threadMode)));
+            }
+        });
+        app.before(ctx -> ctx.attribute(REQUEST_START, System.nanoTime()));
+        if (ConnectionUtil.getReplicaRouter() != null) {
+            app.before(this::startReadRouting);
+            app.after(this::finishReadRouting);
+        }
+        app.after(this::compressResponse);
+        app.after(this::recordRequestMetrics);
+        registerGauges();
+        app.get("/metrics", this::metricsHandler);
         app.post("/register", this::registerHandler);
         app.post("/login", this::loginHandler);
         app.post("/messages", this::createMessageHandler);
+        app.post("/messages/batch", this::createMessagesHandler);
         app.get("/messages", this::getAllMessagesHandler);
         app.get("/accounts/{user_id}/messages", this::getMessagesByUserHandler);
+        app.get("/accounts/{user_id}/stats", this::getAccountStatsHandler);
+        app.get("/messages/search", this::searchMessagesHandler);
+        app.sse("/messages/feed", this::feedHandler);
         app.get("/messages/{message_id}", this::getMessageByIdHandler);
         app.patch("/messages/{message_id}", this::updateMessageHandler);
         app.delete("/messages/{message_id}", this::deleteMessageHandler);
         return app;
     }
 
+    /**
+     * Records the latency and status code of every request under its route template, eg /messages/{message_id}
+     */
+    private void recordRequestMetrics(Context ctx) {
+        Long start = ctx.attribute(REQUEST_START);
+        if (start == null) {
+            return;
+        }
+        String route = ctx.endpointHandlerPath();
+        if (route == null || route.isEmpty()) {
+            route = "unmatched";
+        }
+        Metrics.recordRequest(ctx.method().name(), route, ctx.statusCode(), System.nanoTime() - start);
+    }
+
+    /**
+     * Makes this request's reads see at least the write version in the client's cookie
+     */
+    private void startReadRouting(Context ctx) {
+        ReplicaRouter router = ConnectionUtil.getReplicaRouter();
+        router.resetThread();
+        String cookie = ctx.cookie(READ_VERSION_COOKIE);
+        if (cookie != null) {
+            try {
+                router.requireVersion(Long.parseLong(cookie));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Hands the client the version of any write it made, for its next requests, and drops the ETag of a response
+     * read from a lagging replica: caching that body under the current tag would pin stale data behind 304s
+     */
+    private void finishReadRouting(Context ctx) {
+        ReplicaRouter router = ConnectionUtil.getReplicaRouter();
+        long version = router.getThreadVersion();
+        if (version > 0) {
+            ctx.cookie(READ_VERSION_COOKIE, String.valueOf(version));
+        }
+        if (router.hadStaleRead() && !ctx.res().isCommitted()) {
+            ctx.res().setHeader(Header.ETAG, null);
+        }
+        router.resetThread();
+    }
+
+    /**
+     * Compresses the response body with the coding negotiated from Accept-Encoding, unless it is smaller than
+     * socialmedia.compression.minSize. Small bodies such as single messages and empty results are sent as they are,
+     * since compressing them costs more CPU than the few bytes saved are worth. Streamed responses are compressed
+     * as they are written, by streamHandler
+     */
+    private void compressResponse(Context ctx) throws IOException {
+        if (!compression.isEnabled() || ctx.res().getHeader(Header.CONTENT_ENCODING) != null) {
+            return;
+        }
+        InputStream result = ctx.resultInputStream();
+        if (result == null) {
+            return;
+        }
+        byte[] body = result.readAllBytes();
+        if (body.length < compression.getMinSize()) {
+            ctx.result(body);
+            return;
+        }
+        varyOn(ctx, Header.ACCEPT_ENCODING);
+        String encoding = compression.negotiate(ctx.header(Header.ACCEPT_ENCODING));
+        if (encoding == null) {
+            ctx.result(body);
+            return;
+        }
+        ctx.header(Header.CONTENT_ENCODING, encoding);
+        ctx.result(compression.compress(body, encoding));
+    }
+
+    /**
+     * Exposes the live statistics of the connection pool, the message cache and the write-behind queue as
+     * gauges and counters on /metrics
+     */
+    private void registerGauges() {
+        ConnectionPool pool = ConnectionUtil.getConnectionPool();
+        if (pool != null) {
+            Metrics.registerGauge("db_pool_active_connections", "gauge", "Connections on loan.",
+                    pool::getActiveCount);
+            Metrics.registerGauge("db_pool_idle_connections", "gauge", "Open connections waiting in the pool.",
+                    pool::getIdleCount);
+            Metrics.registerGauge("db_pool_waiting_threads", "gauge", "Callers blocked waiting for a connection.",
+                    pool::getWaiterCount);
+            Metrics.registerGauge("db_pool_borrow_timeouts_total", "counter", "Borrows that timed out.",
+                    pool::getBorrowTimeoutCount);
+            Metrics.registerGauge("db_pool_borrow_seconds_p99", "gauge", "99th percentile borrow latency.",
+                    () -> pool.getBorrowLatency().getPercentile(99) / 1e9);
+        }
+        MessageCache cache = messageService.getMessageCache();
+        Metrics.registerGauge("message_cache_hits_total", "counter", "Message cache hits.", cache::getHitCount);
+        Metrics.registerGauge("message_cache_misses_total", "counter", "Message cache misses.", cache::getMissCount);
+        Metrics.registerGauge("message_cache_evictions_total", "counter", "Message cache evictions.",
+                cache::getEvictionCount);
+        Metrics.registerGauge("message_cache_size", "gauge", "Messages held in the cache.", cache::size);
+        MessageSearchIndex searchIndex = messageService.getSearchIndex();
+        if (searchIndex != null) {
+            Metrics.registerGauge("message_search_indexed_messages", "gauge", "Messages in the search index.",
+                    searchIndex::size);
+            Metrics.registerGauge("message_search_tokens", "gauge", "Distinct tokens in the search index.",
+                    searchIndex::getTokenCount);
+        }
+        Metrics.registerGauge("message_stats_accounts", "gauge", "Accounts with message statistics.",
+                messageService.getStatistics()::size);
+        MessageFeed feed = messageService.getMessageFeed();
+        Metrics.registerGauge("message_feed_subscribers", "gauge", "Open live feed connections.",
+                feed::getSubscriberCount);
+        Metrics.registerGauge("message_feed_events_delivered_total", "counter", "Feed events sent to clients.",
+                feed::getDeliveredCount);
+        Metrics.registerGauge("message_feed_dropped_total", "counter", "Feed clients dropped for falling behind.",
+                feed::getDroppedCount);
+        MessageWriteBehind writeBehind = messageService.getWriteBehind();
+        if (writeBehind != null) {
+            Metrics.registerGauge("write_behind_queue_depth", "gauge", "Messages waiting for a group commit.",
+                    writeBehind::getQueueDepth);
+            Metrics.registerGauge("write_behind_batches_total", "counter", "Group commits.",
+                    writeBehind::getBatchCount);
+            Metrics.registerGauge("write_behind_messages_total", "counter", "Messages written by group commits.",
+                    writeBehind::getWrittenCount);
+            Metrics.registerGauge("write_behind_rejected_total", "counter", "Messages refused with a full queue.",
+                    writeBehind::getRejectedCount);
+            Metrics.registerGauge("write_behind_failed_total", "counter", "Messages whose group commit failed.",
+                    writeBehind::getFailedCount);
+            Metrics.registerGauge("write_behind_commit_seconds_p99", "gauge", "99th percentile enqueue-to-commit.",
+                    () -> writeBehind.getCommitLatency().getPercentile(99) / 1e9);
+        }
+    }
+
+    /**
+     * Returns every metric in the Prometheus text format with status 200
+     */
+    private void metricsHandler(Context ctx) {
+        ctx.status(200);
+        ctx.contentType("text/plain; version=0.0.4; charset=utf-8");
+        ctx.result(Metrics.renderPrometheus());
+    }
+
+    /**
+     * Builds the Jetty thread pool for socialmedia.server.threads. "platform" is a classic pool of
+     * socialmedia.server.maxThreads platform threads. "virtual" keeps a small platform pool for Jetty's selectors
+     * but runs every request handler on its own virtual thread, so handlers blocked on JDBC no longer use up the
+     * pool; the connection pool size then becomes the real limit on concurrent queries. Virtual threads need a JDK
+     * that has them (21, or 19/20 with --enable-preview); on older JDKs Jetty falls back to platform threads.
+     * Leaving the setting at "default" keeps Javalin's own choice.
+     */
+    private ThreadPool createThreadPool(String threadMode) {
+        boolean virtual = "virtual".equalsIgnoreCase(threadMode);
+        QueuedThreadPool pool = new QueuedThreadPool(
+                AppConfig.getInt("socialmedia.server.maxThreads", virtual ? 16 : 250),
+                AppConfig.getInt("socialmedia.server.minThreads", 8), 60000);
+        pool.setName(virtual ? "JettyVirtualThreadPool" : "JettyServerThreadPool");
+        if (virtual) {
+            if (VirtualThreads.areSupported()) {
+                pool.setUseVirtualThreads(true);
+            } else {
+                LoggerFactory.getLogger(SocialMediaController.class).warn(
+                        "Virtual threads are not supported by this JDK, handlers will run on platform threads");
+            }
+        }
+        return pool;
+    }
+
     /**
      * Updated to handle blank username and short password
      */
     private void registerHandler(Context ctx) {
-        Account newAccount = ctx.bodyAsClass(Account.class);
+        Account newAccount = readBody(ctx, Account.class);
         if (!accountService.isValidAccount(newAccount) || accountService.isUsernameTaken(newAccount.getUsername())) {
             ctx.status(400);
             return;
@@ -39,7 +287,9 @@ public class SocialMediaController {
         Account registeredAccount = accountService.registerAccount(newAccount);
         if (registeredAccount != null) {
             ctx.status(200);
-            ctx.json(registeredAccount);
+            writeBody(ctx, registeredAccount);
+        } else if (accountService.isUsernameTaken(newAccount.getUsername())) {
+            ctx.status(400);
         } else {
             ctx.status(500);
         }
@@ -49,11 +299,11 @@ public class SocialMediaController {
      * Updated to use AccountService for login verification
      */
     private void loginHandler(Context ctx) {
-        Account loginAttempt = ctx.bodyAsClass(Account.class);
+        Account loginAttempt = readBody(ctx, Account.class);
         Account account = accountService.login(loginAttempt.getUsername(), loginAttempt.getPassword());
         if (account != null) {
             ctx.status(200);
-            ctx.json(account);
+            writeBody(ctx, account);
         } else {
             ctx.status(401);
         }
@@ -63,11 +313,15 @@ public class SocialMediaController {
      * Updated to return 400 with empty body on validation failure
      */
     private void createMessageHandler(Context ctx) {
-        Message message = ctx.bodyAsClass(Message.class);
+        Message message = readBody(ctx, Message.class);
+        if (messageService.isWriteBehindEnabled()) {
+            createMessageAsyncHandler(ctx, message);
+            return;
+        }
         Message createdMessage = messageService.createMessage(message);
         if (createdMessage != null) {
             ctx.status(200);
-            ctx.json(createdMessage);
+            writeBody(ctx, createdMessage);
         } else {
             ctx.status(400);
             ctx.result("");
@@ -75,33 +329,327 @@ public class SocialMediaController {
     }
 
     /**
-     * Returns all messages with status 200
+     * Same contract as createMessageHandler, but the insert is group-committed by the write-behind queue and the
+     * response is sent when the group commits. Returns 503 with an empty body if the queue is full
+     */
+    private void createMessageAsyncHandler(Context ctx, Message message) {
+        CompletableFuture<Message> created;
+        try {
+            created = messageService.createMessageAsync(message);
+        } catch (RejectedExecutionException e) {
+            ctx.status(503);
+            ctx.result("");
+            return;
+        }
+        ctx.future(() -> created.handle((createdMessage, error) -> {
+            if (error != null) {
+                ctx.status(500);
+                ctx.result("");
+            } else if (createdMessage != null) {
+                ctx.status(200);
+                writeBody(ctx, createdMessage);
+            } else {
+                ctx.status(400);
+                ctx.result("");
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Creates every valid message in the posted JSON array with one batched insert and returns a BatchResult per
+     * item with status 200, or 400 with an empty body if the batch is too large
+     */
+    private void createMessagesHandler(Context ctx) {
+        Message[] messages = readBody(ctx, Message[].class);
+        try {
+            List<BatchResult> results = messageService.createMessages(Arrays.asList(messages));
+            ctx.status(200);
+            writeBody(ctx, results);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            ctx.result("");
+        }
+    }
+
+    /**
+     * Returns all messages with status 200, or one page of them when ?limit= or ?cursor= is given, or only those
+     * posted from ?since= up to ?until=, or 304 when If-None-Match names the current ETag
      */
-    private void getAllMessagesHandler(Context ctx) {
+    private void getAllMessagesHandler(Context ctx) throws IOException {
+        if (notModified(ctx, messageService.getMessageVersions().tableETag())) {
+            return;
+        }
+        if (isPageRequest(ctx)) {
+            pageHandler(ctx, null);
+            return;
+        }
+        if (isTimeRangeRequest(ctx)) {
+            timeRangeHandler(ctx, null);
+            return;
+        }
+        if (isStreamRequest(ctx)) {
+            streamHandler(ctx, null);
+            return;
+        }
         List<Message> messages = messageService.getAllMessages();
         ctx.status(200);
-        ctx.json(messages);
+        writeBody(ctx, messages);
     }
 
     /**
-     * Returns messages by user with status 200
+     * Returns messages by user with status 200, or one page of them when ?limit= or ?cursor= is given, or only
+     * those posted from ?since= up to ?until=, or 304 when If-None-Match names the current ETag
      */
-    private void getMessagesByUserHandler(Context ctx) {
+    private void getMessagesByUserHandler(Context ctx) throws IOException {
         int userId = Integer.parseInt(ctx.pathParam("user_id"));
+        if (notModified(ctx, messageService.getMessageVersions().tableETag())) {
+            return;
+        }
+        if (isPageRequest(ctx)) {
+            pageHandler(ctx, userId);
+            return;
+        }
+        if (isTimeRangeRequest(ctx)) {
+            timeRangeHandler(ctx, userId);
+            return;
+        }
+        if (isStreamRequest(ctx)) {
+            streamHandler(ctx, userId);
+            return;
+        }
         List<Message> messages = messageService.getMessagesByUser(userId);
         ctx.status(200);
-        ctx.json(messages);
+        writeBody(ctx, messages);
+    }
+
+    /**
+     * Returns the message count, first and last post time and average message length of a user with status 200,
+     * from counters kept in memory, so it costs the same however many messages the user has
+     */
+    private void getAccountStatsHandler(Context ctx) {
+        int userId = Integer.parseInt(ctx.pathParam("user_id"));
+        ctx.status(200);
+        writeBody(ctx, messageService.getAccountStats(userId));
+    }
+
+    /**
+     * Sets the response body in the type the Accept header asks for: CBOR or Smile for clients that want them,
+     * otherwise JSON. JSON goes out as the bytes ModelJsonMapper wrote, not as a String Javalin would only encode
+     * again
+     */
+    private void writeBody(Context ctx, Object body) {
+        varyOn(ctx, Header.ACCEPT);
+        String type = negotiation.negotiate(ctx.header(Header.ACCEPT));
+        if (ContentNegotiation.JSON.equals(type)) {
+            ctx.contentType(ContentType.APPLICATION_JSON);
+            ctx.result(jsonMapper.toJsonBytes(body, body.getClass()));
+        } else {
+            ctx.contentType(type);
+            ctx.result(negotiation.write(body, type));
+        }
+    }
+
+    /**
+     * Adds a request header to the Vary list, once, after any already there
+     */
+    private static void varyOn(Context ctx, String header) {
+        String vary = ctx.res().getHeader(Header.VARY);
+        if (vary == null || vary.isEmpty()) {
+            ctx.header(Header.VARY, header);
+        } else if (!Arrays.asList(vary.split(",\\s*")).contains(header)) {
+            ctx.header(Header.VARY, vary + ", " + header);
+        }
+    }
+
+    /**
+     * Reads the request body as JSON, or as CBOR or Smile when its Content-Type says so
+     */
+    private <T> T readBody(Context ctx, Class<T> type) {
+        String bodyType = negotiation.bodyType(ctx.contentType());
+        if (ContentNegotiation.JSON.equals(bodyType)) {
+            return ctx.bodyAsClass(type);
+        }
+        return negotiation.read(ctx.bodyAsBytes(), type, bodyType);
+    }
+
+    /**
+     * Sets the ETag header and answers 304 with no body when the client's If-None-Match already names it. The tag
+     * must be taken before the data is read, so a change committed mid-read shows up as a new tag next time.
+     *
+     * @return true if the response is complete and the handler should stop
+     */
+    private boolean notModified(Context ctx, String etag) {
+        String type = negotiation.negotiate(ctx.header(Header.ACCEPT));
+        if (!ContentNegotiation.JSON.equals(type)) {
+            // each encoding is its own representation, so a JSON body's tag must never validate a CBOR one
+            etag = etag.substring(0, etag.length() - 1) + "-" + type.substring(type.lastIndexOf('/') + 1) + "\"";
+        }
+        varyOn(ctx, Header.ACCEPT);
+        ctx.header(Header.ETAG, etag);
+        String ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            // If-None-Match uses weak comparison, so W/ prefixes are ignored on both sides
+            if (tag.equals("*") || stripWeak(tag).equals(stripWeak(etag))) {
+                ctx.status(304);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private boolean isPageRequest(Context ctx) {
+        return ctx.queryParam("limit") != null || ctx.queryParam("cursor") != null;
+    }
+
+    private boolean isStreamRequest(Context ctx) {
+        String stream = ctx.queryParam("stream");
+        return stream == null ? STREAM_LISTS : Boolean.parseBoolean(stream);
+    }
+
+    /**
+     * Writes the message list as a JSON (or CBOR or Smile, per the Accept header) array with status 200, one message
+     * at a time as rows come off the cursor, so the response never exists in memory as a whole and the first bytes
+     * go out before the query finishes. The stream is compressed on the fly when the client accepts it
+     */
+    private void streamHandler(Context ctx, Integer postedBy) throws IOException {
+        String type = negotiation.negotiate(ctx.header(Header.ACCEPT));
+        ObjectMapper mapper = ContentNegotiation.JSON.equals(type) ? objectMapper : negotiation.mapperFor(type);
+        ctx.status(200);
+        varyOn(ctx, Header.ACCEPT);
+        ctx.contentType(type);
+        OutputStream out = ctx.outputStream();
+        if (compression.isEnabled()) {
+            varyOn(ctx, Header.ACCEPT_ENCODING);
+            String encoding = compression.negotiate(ctx.header(Header.ACCEPT_ENCODING));
+            if (encoding != null) {
+                ctx.header(Header.CONTENT_ENCODING, encoding);
+                out = compression.wrap(out, encoding);
+            }
+        }
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            messageService.forEachMessage(postedBy, message -> {
+                try {
+                    generator.writeObject(message);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Returns a MessagePage with status 200, or 400 with an empty body if the limit or cursor is invalid
+     */
+    private void pageHandler(Context ctx, Integer postedBy) {
+        try {
+            String limit = ctx.queryParam("limit");
+            int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limit);
+            MessagePage page = messageService.getMessagesPage(postedBy, ctx.queryParam("cursor"), pageSize,
+                    timeParam(ctx, "since"), timeParam(ctx, "until"));
+            ctx.status(200);
+            writeBody(ctx, page);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            ctx.result("");
+        }
+    }
+
+    private boolean isTimeRangeRequest(Context ctx) {
+        return ctx.queryParam("since") != null || ctx.queryParam("until") != null;
+    }
+
+    /**
+     * @return the epoch seconds in a query parameter, or null if it is absent
+     * @throws NumberFormatException if it is not a number
+     */
+    private static Long timeParam(Context ctx, String name) {
+        String value = ctx.queryParam(name);
+        return value == null ? null : Long.parseLong(value.trim());
+    }
+
+    /**
+     * Returns the messages posted from ?since= (inclusive) up to ?until= (exclusive), in epoch seconds, in
+     * (time_posted_epoch, message_id) order with status 200, or 400 with an empty body if either is not a number
+     */
+    private void timeRangeHandler(Context ctx, Integer postedBy) {
+        try {
+            List<Message> messages = messageService.getMessagesByTime(postedBy, timeParam(ctx, "since"),
+                    timeParam(ctx, "until"));
+            ctx.status(200);
+            writeBody(ctx, messages);
+        } catch (NumberFormatException e) {
+            ctx.status(400);
+            ctx.result("");
+        }
+    }
+
+    /**
+     * Returns the messages matching ?q= with status 200, at most ?limit= of them, or 400 with an empty body if the
+     * query has no terms or the limit is invalid
+     */
+    private void searchMessagesHandler(Context ctx) {
+        try {
+            String limit = ctx.queryParam("limit");
+            int maxResults = limit == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limit);
+            List<Message> messages = messageService.searchMessages(ctx.queryParam("q"), maxResults);
+            ctx.status(200);
+            writeBody(ctx, messages);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            ctx.result("");
+        }
     }
 
     /**
-     * Updated to return 200 and empty body if message not found
+     * Streams created, updated and deleted events as Server-Sent Events, limited to one account with ?posted_by=.
+     * The event name is the kind of change, the data is the message JSON and the id is the feed sequence number.
+     * Clients that fall behind by more than socialmedia.feed.bufferSize events are disconnected and should
+     * reconnect and catch up with GET /messages
+     */
+    private void feedHandler(SseClient client) {
+        Integer postedBy;
+        try {
+            String param = client.ctx.queryParam("posted_by");
+            postedBy = param == null ? null : Integer.valueOf(param);
+        } catch (NumberFormatException e) {
+            client.close();
+            return;
+        }
+        client.keepAlive();
+        MessageFeed.Subscription subscription = messageService.getMessageFeed().subscribe(postedBy, event -> {
+            if (MessageEvent.HEARTBEAT.equals(event.getType())) {
+                client.sendComment(MessageEvent.HEARTBEAT);
+                return;
+            }
+            client.sendEvent(event.getType(), jsonMapper.toJsonString(event.getMessage(), Message.class),
+                    String.valueOf(event.getId()));
+        }, client::close);
+        client.onClose(subscription::close);
+    }
+
+    /**
+     * Updated to return 200 and empty body if message not found, and 304 when If-None-Match names the current ETag
      */
     private void getMessageByIdHandler(Context ctx) {
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
+        if (notModified(ctx, messageService.getMessageVersions().messageETag(messageId))) {
+            return;
+        }
         Message message = messageService.getMessageById(messageId);
         if (message != null) {
             ctx.status(200);
-            ctx.json(message);
+            writeBody(ctx, message);
         } else {
             ctx.status(200);
             ctx.result("");
@@ -113,11 +661,11 @@ public class SocialMediaController {
      */
     private void updateMessageHandler(Context ctx) {
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
-        Message incoming = ctx.bodyAsClass(Message.class);
+        Message incoming = readBody(ctx, Message.class);
         Message updated = messageService.updateMessage(messageId, incoming.getMessage_text());
         if (updated != null) {
             ctx.status(200);
-            ctx.json(updated);
+            writeBody(ctx, updated);
         } else {
             ctx.status(400);
             ctx.result("");
@@ -129,11 +677,11 @@ public class SocialMediaController {
      */
     private void deleteMessageHandler(Context ctx) {
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
-        Message deleted = messageService.getMessageById(messageId);
+        Message deleted = messageService.deleteMessage(messageId);
 
-        if (deleted != null && messageService.deleteMessage(messageId)) {
+        if (deleted != null) {
             ctx.status(200);
-            ctx.json(deleted);
+            writeBody(ctx, deleted);
         } else {
             ctx.status(200);
             ctx.result("");
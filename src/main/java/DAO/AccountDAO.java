@@ -2,29 +2,93 @@ package DAO;
 
 import Model.Account;
 import Util.ConnectionUtil;
+import Util.IntIdGenerator;
+import Util.Metrics;
 
 import java.sql.*;
+import java.util.function.Consumer;
 
 /**
  * Handles all database operations related to Account.
  */
 public class AccountDAO {
 
+    /**
+     * True when socialmedia.ids.mode=app: inserts carry an account_id from {@link IntIdGenerator} instead of
+     * reading back the one the identity column generated.
+     */
+    private static final boolean APP_IDS = IntIdGenerator.isEnabled();
+
     /**
      * Checks if a username already exists in the account table.
      */
     public boolean usernameExists(String username) {
+        long start = System.nanoTime();
         Connection conn = null;
         try {
-            conn = ConnectionUtil.getConnection();
+            conn = ConnectionUtil.getReadConnection();
             String sql = "SELECT * FROM account WHERE username = ?";
             PreparedStatement stmt = conn.prepareStatement(sql);
             stmt.setString(1, username);
             return stmt.executeQuery().next();
         } catch (SQLException e) {
+            Metrics.recordDaoError("AccountDAO.usernameExists");
             e.printStackTrace();
             return true; // assume taken if there's a DB error
         } finally {
+            Metrics.recordDao("AccountDAO.usernameExists", start);
+            try { if (conn != null) conn.close(); } catch (SQLException ignored) {}
+        }
+    }
+
+    /**
+     * Checks if an account_id exists in the account table.
+     */
+    public boolean accountExists(int accountId) {
+        long start = System.nanoTime();
+        Connection conn = null;
+        try {
+            conn = ConnectionUtil.getReadConnection();
+            String sql = "SELECT 1 FROM account WHERE account_id = ?";
+            PreparedStatement stmt = conn.prepareStatement(sql);
+            stmt.setInt(1, accountId);
+            return stmt.executeQuery().next();
+        } catch (SQLException e) {
+            Metrics.recordDaoError("AccountDAO.accountExists");
+            e.printStackTrace();
+            return false;
+        } finally {
+            Metrics.recordDao("AccountDAO.accountExists", start);
+            try { if (conn != null) conn.close(); } catch (SQLException ignored) {}
+        }
+    }
+
+    /**
+     * Passes every username in the account table to a callback, one row at a time.
+     *
+     * @param action called once for every username
+     * @return the number of usernames read, or -1 if there was a DB error
+     */
+    public int forEachUsername(Consumer<String> action) {
+        long start = System.nanoTime();
+        Connection conn = null;
+        try {
+            conn = ConnectionUtil.getConnection();
+            String sql = "SELECT username FROM account";
+            PreparedStatement stmt = conn.prepareStatement(sql);
+            ResultSet rs = stmt.executeQuery();
+            int count = 0;
+            while (rs.next()) {
+                action.accept(rs.getString("username"));
+                count++;
+            }
+            return count;
+        } catch (SQLException e) {
+            Metrics.recordDaoError("AccountDAO.forEachUsername");
+            e.printStackTrace();
+            return -1;
+        } finally {
+            Metrics.recordDao("AccountDAO.forEachUsername", start);
             try { if (conn != null) conn.close(); } catch (SQLException ignored) {}
         }
     }
@@ -33,9 +97,21 @@ public class AccountDAO {
      * Inserts a new account into the database and returns it with generated ID.
      */
     public Account insertAccount(Account account) {
+        long start = System.nanoTime();
         Connection conn = null;
         try {
             conn = ConnectionUtil.getConnection();
+            if (APP_IDS) {
+                int accountId = IntIdGenerator.forColumn(conn, "account", "account_id").nextId();
+                String sql = "INSERT INTO account (account_id, username, password) VALUES (?, ?, ?)";
+                PreparedStatement stmt = conn.prepareStatement(sql);
+                stmt.setInt(1, accountId);
+                stmt.setString(2, account.getUsername());
+                stmt.setString(3, account.getPassword());
+                stmt.executeUpdate();
+                account.setAccount_id(accountId);
+                return account;
+            }
             String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
             stmt.setString(1, account.getUsername());
@@ -47,8 +123,10 @@ public class AccountDAO {
                 return account;
             }
         } catch (SQLException e) {
+            Metrics.recordDaoError("AccountDAO.insertAccount");
             e.printStackTrace();
         } finally {
+            Metrics.recordDao("AccountDAO.insertAccount", start);
             try { if (conn != null) conn.close(); } catch (SQLException ignored) {}
         }
         return null;
@@ -58,9 +136,10 @@ public class AccountDAO {
      * Returns an Account if the username and password match a row in the table.
      */
     public Account getAccountByCredentials(String username, String password) {
+        long start = System.nanoTime();
         Connection conn = null;
         try {
-            conn = ConnectionUtil.getConnection();
+            conn = ConnectionUtil.getReadConnection();
             String sql = "SELECT * FROM account WHERE username = ? AND password = ?";
             PreparedStatement stmt = conn.prepareStatement(sql);
             stmt.setString(1, username);
@@ -74,8 +153,10 @@ public class AccountDAO {
                 );
             }
         } catch (SQLException e) {
+            Metrics.recordDaoError("AccountDAO.getAccountByCredentials");
             e.printStackTrace();
         } finally {
+            Metrics.recordDao("AccountDAO.getAccountByCredentials", start);
             try { if (conn != null) conn.close(); } catch (SQLException ignored) {}
         }
         return null;
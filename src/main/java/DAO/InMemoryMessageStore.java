@@ -0,0 +1,534 @@
+package DAO;
+
+import Model.Message;
+import Util.IntHashMap;
+import Util.PageCursor;
+import Util.Postings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * A MessageStore that keeps every message in the heap, for deployments where a JDBC round trip per read is too
+ * slow. Messages are kept in an {@link IntHashMap} by message_id, and every user's message_ids in a sorted int[]
+ * in a second IntHashMap by posted_by, so neither lookups nor the secondary index box their keys.
+ *
+ * Durability comes from snapshots: {@link #snapshot} writes every message to a file, and the constructor restores
+ * the last snapshot. Each snapshot is a consistent point in time: the stored Message objects are never changed
+ * (an update stores a new one), so copying the references under the read lock is enough, and the file is written
+ * afterwards without holding it. Writes made after the last snapshot are lost if the process dies, so the snapshot
+ * interval is the window of data at risk. A snapshot file that exists but cannot be read stops the constructor
+ * rather than starting the store empty.
+ *
+ * Accounts stay in the database. posted_by is checked with the given predicate the first time an account posts,
+ * and remembered after that, since accounts are never deleted.
+ *
+ * Callers get copies, never the stored objects. Reads share a read lock; writes take the write lock briefly, and
+ * callbacks and file I/O never run under either.
+ */
+public class InMemoryMessageStore implements MessageStore {
+
+    private static final int SNAPSHOT_MAGIC = 0x534D5331;
+
+    private static final Comparator<Message> BY_TIME = Comparator.comparingLong(Message::getTime_posted_epoch)
+            .thenComparingInt(Message::getMessage_id);
+
+    private final IntHashMap<Message> messages = new IntHashMap<>(1024);
+    private final IntHashMap<Postings> byUser = new IntHashMap<>();
+    private final IntHashMap<Boolean> knownAccounts = new IntHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int nextId = 1;
+
+    private final Path snapshotFile;
+    private final IntPredicate accountExists;
+    private final AtomicLong changes = new AtomicLong();
+    /**
+     * Held while a snapshot is written, so the scheduled and shutdown snapshots never share the temporary file.
+     */
+    private final Object snapshotLock = new Object();
+    private volatile long snapshotChanges;
+    private final boolean restored;
+    private ScheduledExecutorService snapshotter;
+
+    /**
+     * @param snapshotFile where snapshots are written and restored from, or null to keep nothing on disk
+     * @param accountExists tells whether an account_id exists
+     * @throws UncheckedIOException if the snapshot file exists but cannot be restored
+     */
+    public InMemoryMessageStore(Path snapshotFile, IntPredicate accountExists) {
+        this.snapshotFile = snapshotFile;
+        this.accountExists = accountExists;
+        this.restored = snapshotFile != null && Files.exists(snapshotFile) && restore();
+    }
+
+    /**
+     * @return true if the store started from a snapshot file
+     */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    private boolean restore() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("not a message snapshot: " + snapshotFile);
+            }
+            int savedNextId = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                load(new Message(in.readInt(), in.readInt(), in.readUTF(), in.readLong()));
+            }
+            lock.writeLock().lock();
+            try {
+                nextId = Math.max(nextId, savedNextId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            snapshotChanges = changes.get();
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not restore message snapshot " + snapshotFile, e);
+        }
+    }
+
+    /**
+     * Adds a message with the ID it already has, eg when seeding the store from the message table. Later inserts
+     * get IDs above every loaded one.
+     *
+     * @param message the message to add
+     */
+    public void load(Message message) {
+        Message stored = copy(message);
+        lock.writeLock().lock();
+        try {
+            store(stored);
+            knownAccounts.put(stored.getPosted_by(), Boolean.TRUE);
+            nextId = Math.max(nextId, stored.getMessage_id() + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes every message to the snapshot file, through a temporary file that is forced to disk and then replaces
+     * it, so a crash during the write leaves the previous snapshot in place. Only one snapshot is written at a time.
+     *
+     * @return true if the snapshot was written
+     */
+    public boolean snapshot() {
+        if (snapshotFile == null) {
+            return false;
+        }
+        synchronized (snapshotLock) {
+            return writeSnapshot();
+        }
+    }
+
+    private boolean writeSnapshot() {
+        Message[] copy;
+        int savedNextId;
+        long version;
+        lock.readLock().lock();
+        try {
+            version = changes.get();
+            savedNextId = nextId;
+            int[] ids = messages.keys();
+            Arrays.sort(ids);
+            copy = new Message[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                copy[i] = messages.get(ids[i]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try {
+            if (snapshotFile.getParent() != null) {
+                Files.createDirectories(snapshotFile.getParent());
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                         Channels.newOutputStream(channel)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(savedNextId);
+                out.writeInt(copy.length);
+                for (Message message : copy) {
+                    out.writeInt(message.getMessage_id());
+                    out.writeInt(message.getPosted_by());
+                    out.writeUTF(message.getMessage_text());
+                    out.writeLong(message.getTime_posted_epoch());
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            snapshotChanges = version;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Takes a snapshot every intervalMillis on a background thread, skipping intervals with no changes, and one
+     * more when the JVM shuts down.
+     *
+     * @param intervalMillis the time between snapshots
+     */
+    public synchronized void startSnapshots(long intervalMillis) {
+        if (snapshotter != null || snapshotFile == null || intervalMillis <= 0) {
+            return;
+        }
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(this::snapshotIfChanged, intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::snapshotIfChanged, "message-snapshot-shutdown"));
+    }
+
+    private void snapshotIfChanged() {
+        synchronized (snapshotLock) {
+            if (changes.get() != snapshotChanges) {
+                writeSnapshot();
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return messages.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean isAccount(int accountId) {
+        lock.readLock().lock();
+        try {
+            if (knownAccounts.get(accountId) != null) {
+                return true;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // outside the lock: this may be a database round trip
+        if (!accountExists.test(accountId)) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            knownAccounts.put(accountId, Boolean.TRUE);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        if (!isAccount(message.getPosted_by())) {
+            return null;
+        }
+        lock.writeLock().lock();
+        try {
+            Message stored = new Message(nextId++, message.getPosted_by(), message.getMessage_text(),
+                    message.getTime_posted_epoch());
+            store(stored);
+            changes.incrementAndGet();
+            return copy(stored);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Message[] insertMessages(List<Message> batch) {
+        boolean[] valid = new boolean[batch.size()];
+        IntHashMap<Boolean> checked = new IntHashMap<>();
+        for (int i = 0; i < valid.length; i++) {
+            int postedBy = batch.get(i).getPosted_by();
+            Boolean known = checked.get(postedBy);
+            if (known == null) {
+                known = isAccount(postedBy);
+                checked.put(postedBy, known);
+            }
+            valid[i] = known;
+        }
+        Message[] inserted = new Message[batch.size()];
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < valid.length; i++) {
+                if (valid[i]) {
+                    Message message = batch.get(i);
+                    Message stored = new Message(nextId++, message.getPosted_by(), message.getMessage_text(),
+                            message.getTime_posted_epoch());
+                    store(stored);
+                    inserted[i] = copy(stored);
+                }
+            }
+            changes.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return inserted;
+    }
+
+    private void store(Message stored) {
+        Message previous = messages.put(stored.getMessage_id(), stored);
+        if (previous != null && previous.getPosted_by() != stored.getPosted_by()) {
+            unindex(previous);
+        }
+        Postings postings = byUser.get(stored.getPosted_by());
+        if (postings == null) {
+            postings = new Postings();
+            byUser.put(stored.getPosted_by(), postings);
+        }
+        postings.add(stored.getMessage_id());
+    }
+
+    private void unindex(Message stored) {
+        Postings postings = byUser.get(stored.getPosted_by());
+        if (postings != null && postings.remove(stored.getMessage_id()) && postings.size() == 0) {
+            byUser.remove(stored.getPosted_by());
+        }
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        List<Message> result = new ArrayList<>();
+        for (Message message : sortedReferences(null)) {
+            result.add(copy(message));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Message> getMessagesByUser(int userId) {
+        List<Message> result = new ArrayList<>();
+        for (Message message : sortedReferences(userId)) {
+            result.add(copy(message));
+        }
+        return result;
+    }
+
+    /**
+     * Takes the stored messages of one user, or of everyone, in message_id order while holding the read lock, so
+     * that the caller can go through them after releasing it.
+     */
+    private Message[] sortedReferences(Integer postedBy) {
+        lock.readLock().lock();
+        try {
+            int[] ids;
+            if (postedBy == null) {
+                ids = messages.keys();
+                Arrays.sort(ids);
+            } else {
+                Postings postings = byUser.get(postedBy);
+                ids = postings == null ? new int[0] : postings.toArray();
+            }
+            Message[] result = new Message[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                result[i] = messages.get(ids[i]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachMessage(Integer postedBy, Consumer<Message> action) {
+        for (Message message : sortedReferences(postedBy)) {
+            action.accept(copy(message));
+        }
+    }
+
+    /**
+     * There is no time index, so this goes over every candidate message once and keeps the first limit of them in
+     * a bounded heap: O(n log limit) per page.
+     */
+    @Override
+    public List<Message> getMessagesPage(Integer postedBy, PageCursor after, int limit) {
+        List<Message> page = new ArrayList<>();
+        if (limit <= 0) {
+            return page;
+        }
+        PriorityQueue<Message> heap = new PriorityQueue<>(limit + 1, BY_TIME.reversed());
+        lock.readLock().lock();
+        try {
+            int[] ids;
+            int count;
+            if (postedBy == null) {
+                ids = messages.keys();
+                count = ids.length;
+            } else {
+                Postings postings = byUser.get(postedBy);
+                ids = postings == null ? new int[0] : postings.array();
+                count = postings == null ? 0 : postings.size();
+            }
+            for (int i = 0; i < count; i++) {
+                Message message = messages.get(ids[i]);
+                if (after != null && (message.getTime_posted_epoch() < after.getTimePostedEpoch()
+                        || message.getTime_posted_epoch() == after.getTimePostedEpoch()
+                        && message.getMessage_id() <= after.getMessageId())) {
+                    continue;
+                }
+                heap.add(message);
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (Message message : heap) {
+            page.add(copy(message));
+        }
+        page.sort(BY_TIME);
+        return page;
+    }
+
+    /**
+     * Like getMessagesPage, this goes over every candidate message, then sorts the ones in range.
+     */
+    @Override
+    public List<Message> getMessagesByTime(Integer postedBy, long since, long until) {
+        List<Message> result = new ArrayList<>();
+        for (Message message : sortedReferences(postedBy)) {
+            if (message.getTime_posted_epoch() >= since && message.getTime_posted_epoch() < until) {
+                result.add(copy(message));
+            }
+        }
+        result.sort(BY_TIME);
+        return result;
+    }
+
+    @Override
+    public Message getFirstMessage(int postedBy) {
+        return edgeMessage(postedBy, -1);
+    }
+
+    @Override
+    public Message getLastMessage(int postedBy) {
+        return edgeMessage(postedBy, 1);
+    }
+
+    /**
+     * @param direction -1 for the first message in (time_posted_epoch, message_id) order, 1 for the last
+     */
+    private Message edgeMessage(int postedBy, int direction) {
+        lock.readLock().lock();
+        try {
+            Postings postings = byUser.get(postedBy);
+            Message edge = null;
+            for (int i = 0; postings != null && i < postings.size(); i++) {
+                Message message = messages.get(postings.get(i));
+                if (edge == null || Integer.signum(BY_TIME.compare(message, edge)) == direction) {
+                    edge = message;
+                }
+            }
+            return edge == null ? null : copy(edge);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesByIds(int[] messageIds) {
+        int[] ids = messageIds.clone();
+        Arrays.sort(ids);
+        List<Message> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                Message message = i > 0 && ids[i] == ids[i - 1] ? null : messages.get(ids[i]);
+                if (message != null) {
+                    result.add(copy(message));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public Message getMessageById(int messageId) {
+        lock.readLock().lock();
+        try {
+            Message message = messages.get(messageId);
+            return message == null ? null : copy(message);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message updateMessage(int messageId, String newText) {
+        lock.writeLock().lock();
+        try {
+            Message message = messages.get(messageId);
+            if (message == null) {
+                return null;
+            }
+            messages.put(messageId, new Message(messageId, message.getPosted_by(), newText,
+                    message.getTime_posted_epoch()));
+            changes.incrementAndGet();
+            return copy(message);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Message deleteMessage(int messageId) {
+        lock.writeLock().lock();
+        try {
+            Message message = messages.remove(messageId);
+            if (message == null) {
+                return null;
+            }
+            unindex(message);
+            changes.incrementAndGet();
+            return copy(message);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static Message copy(Message message) {
+        return new Message(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+                message.getTime_posted_epoch());
+    }
+}
@@ -0,0 +1,795 @@
+package DAO;
+
+import Model.Message;
+import Util.IntHashMap;
+import Util.PageCursor;
+import Util.Postings;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.zip.CRC32;
+
+/**
+ * A MessageStore that appends every change to a log of memory-mapped segment files.
+ *
+ * Each segment is a fixed-size file mapped with FileChannel.map. An insert or update appends a PUT record with the
+ * whole message; a delete appends a DELETE record. Writes are purely sequential, and a message_id -> (segment,
+ * offset) index in the heap, together with posted_by and time_posted_epoch, answers every query without touching
+ * the files; only message_text is read back, straight from the mapping, ie from the page cache. A posted_by index
+ * of sorted int[] postings serves per-user queries as in {@link InMemoryMessageStore}.
+ *
+ * Record layout: int body length, int CRC32 of the body, then the body: byte type, int message_id, int posted_by,
+ * long time_posted_epoch, short text length and the UTF-8 text. A segment starts with a header of magic, segment
+ * number and the next message_id at the time it was created. Opening the store replays every segment in order and
+ * stops a segment at the first zero length or bad checksum, which is where a write was cut off.
+ *
+ * Superseded records are garbage. {@link #compact} rewrites the live records of sealed segments that are mostly
+ * garbage into the active segment and deletes the old files. A DELETE record is kept while an older segment could
+ * still hold a PUT for the same message.
+ *
+ * Written records survive the process dying, since they are already in the page cache; surviving the operating
+ * system dying needs syncWrites, which forces the mapping to disk after every change.
+ */
+public class LogMessageStore implements MessageStore {
+
+    private static final int SEGMENT_MAGIC = 0x534D4C31;
+    private static final int SEGMENT_HEADER = 12;
+    private static final int RECORD_HEADER = 8;
+    private static final int BODY_FIXED = 1 + 4 + 4 + 8 + 2;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private static final Comparator<Entry> BY_TIME = Comparator.comparingLong((Entry e) -> e.timePostedEpoch)
+            .thenComparingInt(e -> e.messageId);
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean syncWrites;
+    private final IntPredicate accountExists;
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final IntHashMap<Entry> index = new IntHashMap<>(1024);
+    private final IntHashMap<Postings> byUser = new IntHashMap<>();
+    private final IntHashMap<Boolean> knownAccounts = new IntHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Segment active;
+    private int nextId = 1;
+    private final boolean recovered;
+    private ScheduledExecutorService compactor;
+
+    /**
+     * Opens the log in a directory, replaying any segments already there.
+     *
+     * @param directory where the segment files live; created if missing
+     * @param segmentBytes the size of each segment file
+     * @param syncWrites force every change to disk before returning
+     * @param accountExists tells whether an account_id exists
+     */
+    public LogMessageStore(Path directory, int segmentBytes, boolean syncWrites, IntPredicate accountExists) {
+        this.directory = directory;
+        this.segmentBytes = Math.max(segmentBytes, 4096);
+        this.syncWrites = syncWrites;
+        this.accountExists = accountExists;
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.log")) {
+                for (Path file : files) {
+                    Segment segment = Segment.open(file, this.segmentBytes);
+                    segments.put(segment.number, segment);
+                }
+            }
+            for (Segment segment : segments.values()) {
+                replay(segment);
+            }
+            recovered = !segments.isEmpty();
+            if (segments.isEmpty()) {
+                active = newSegment(1);
+            } else {
+                active = segments.lastEntry().getValue();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not open message log in " + directory, e);
+        }
+    }
+
+    /**
+     * @return true if the store was rebuilt from existing segment files
+     */
+    public boolean isRecovered() {
+        return recovered;
+    }
+
+    private Segment newSegment(int number) throws IOException {
+        Segment segment = Segment.create(directory.resolve(String.format("segment-%08d.log", number)), number,
+                nextId, segmentBytes);
+        segments.put(number, segment);
+        return segment;
+    }
+
+    private void replay(Segment segment) {
+        nextId = Math.max(nextId, segment.baseNextId);
+        int offset = SEGMENT_HEADER;
+        while (true) {
+            Record record = segment.read(offset);
+            if (record == null) {
+                break;
+            }
+            if (record.type == PUT) {
+                Entry previous = index.get(record.messageId);
+                if (previous != null) {
+                    segments.get(previous.segment).garbage += previous.length;
+                    if (previous.postedBy != record.postedBy) {
+                        unindex(previous);
+                    }
+                }
+                putEntry(new Entry(record.messageId, record.postedBy, record.timePostedEpoch, segment.number, offset,
+                        record.length));
+                knownAccounts.put(record.postedBy, Boolean.TRUE);
+            } else {
+                Entry previous = index.remove(record.messageId);
+                if (previous != null) {
+                    segments.get(previous.segment).garbage += previous.length;
+                    unindex(previous);
+                }
+                // the tombstone itself becomes garbage once the segments before it are gone
+                segment.tombstones++;
+            }
+            nextId = Math.max(nextId, record.messageId + 1);
+            offset += record.length;
+        }
+        segment.position = offset;
+    }
+
+    /**
+     * Appends a message with the ID it already has, eg when seeding the log from the message table.
+     *
+     * @param message the message to add
+     */
+    public void load(Message message) {
+        lock.writeLock().lock();
+        try {
+            appendPut(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+                    message.getTime_posted_epoch());
+            knownAccounts.put(message.getPosted_by(), Boolean.TRUE);
+            nextId = Math.max(nextId, message.getMessage_id() + 1);
+            sync();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Entry appendPut(int messageId, int postedBy, String text, long timePostedEpoch) {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(BODY_FIXED + utf8.length);
+        body.put(PUT).putInt(messageId).putInt(postedBy).putLong(timePostedEpoch).putShort((short) utf8.length)
+                .put(utf8);
+        int offset = append(body.array());
+        Entry previous = index.get(messageId);
+        if (previous != null) {
+            segments.get(previous.segment).garbage += previous.length;
+            if (previous.postedBy != postedBy) {
+                unindex(previous);
+            }
+        }
+        Entry entry = new Entry(messageId, postedBy, timePostedEpoch, active.number, offset,
+                RECORD_HEADER + body.capacity());
+        putEntry(entry);
+        return entry;
+    }
+
+    private void appendDelete(int messageId) {
+        ByteBuffer body = ByteBuffer.allocate(BODY_FIXED);
+        body.put(DELETE).putInt(messageId).putInt(0).putLong(0).putShort((short) 0);
+        append(body.array());
+        active.tombstones++;
+    }
+
+    /**
+     * Writes one record at the end of the active segment, starting a new segment when it does not fit.
+     *
+     * @return the record's offset in the active segment
+     */
+    private int append(byte[] body) {
+        int length = RECORD_HEADER + body.length;
+        if (length > segmentBytes - SEGMENT_HEADER - RECORD_HEADER) {
+            throw new IllegalArgumentException("record of " + length + " bytes does not fit in a segment");
+        }
+        try {
+            // keep room for a zero length after the record, which marks the end of the segment
+            if (active.position + length + RECORD_HEADER > segmentBytes) {
+                active.force();
+                active = newSegment(active.number + 1);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        int offset = active.position;
+        ByteBuffer map = active.map;
+        // write the body before the length, so a reader of the file never sees a length over a partial body
+        map.putInt(offset + 4, (int) crc.getValue());
+        ByteBuffer view = map.duplicate();
+        view.position(offset + RECORD_HEADER);
+        view.put(body);
+        map.putInt(offset, body.length);
+        active.position = offset + length;
+        return offset;
+    }
+
+    private void sync() {
+        if (syncWrites) {
+            active.force();
+        }
+    }
+
+    private void putEntry(Entry entry) {
+        index.put(entry.messageId, entry);
+        Postings postings = byUser.get(entry.postedBy);
+        if (postings == null) {
+            postings = new Postings();
+            byUser.put(entry.postedBy, postings);
+        }
+        postings.add(entry.messageId);
+    }
+
+    private void unindex(Entry entry) {
+        Postings postings = byUser.get(entry.postedBy);
+        if (postings != null && postings.remove(entry.messageId) && postings.size() == 0) {
+            byUser.remove(entry.postedBy);
+        }
+    }
+
+    private Message readMessage(Entry entry) {
+        Record record = segments.get(entry.segment).read(entry.offset);
+        return new Message(entry.messageId, entry.postedBy, record.text, entry.timePostedEpoch);
+    }
+
+    private boolean isAccount(int accountId) {
+        lock.readLock().lock();
+        try {
+            if (knownAccounts.get(accountId) != null) {
+                return true;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (!accountExists.test(accountId)) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            knownAccounts.put(accountId, Boolean.TRUE);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        if (!isAccount(message.getPosted_by())) {
+            return null;
+        }
+        lock.writeLock().lock();
+        try {
+            int messageId = nextId++;
+            appendPut(messageId, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+            sync();
+            return new Message(messageId, message.getPosted_by(), message.getMessage_text(),
+                    message.getTime_posted_epoch());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Message[] insertMessages(List<Message> messages) {
+        boolean[] valid = new boolean[messages.size()];
+        for (int i = 0; i < valid.length; i++) {
+            valid[i] = isAccount(messages.get(i).getPosted_by());
+        }
+        Message[] inserted = new Message[messages.size()];
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < valid.length; i++) {
+                if (valid[i]) {
+                    Message message = messages.get(i);
+                    int messageId = nextId++;
+                    appendPut(messageId, message.getPosted_by(), message.getMessage_text(),
+                            message.getTime_posted_epoch());
+                    inserted[i] = new Message(messageId, message.getPosted_by(), message.getMessage_text(),
+                            message.getTime_posted_epoch());
+                }
+            }
+            sync();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return inserted;
+    }
+
+    /**
+     * Collects, under the read lock, the entries of one user or of everyone in message_id order.
+     */
+    private Entry[] sortedEntries(Integer postedBy) {
+        int[] ids;
+        if (postedBy == null) {
+            ids = index.keys();
+            Arrays.sort(ids);
+        } else {
+            Postings postings = byUser.get(postedBy);
+            ids = postings == null ? new int[0] : postings.toArray();
+        }
+        Entry[] entries = new Entry[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            entries[i] = index.get(ids[i]);
+        }
+        return entries;
+    }
+
+    private List<Message> readAll(Integer postedBy) {
+        lock.readLock().lock();
+        try {
+            List<Message> result = new ArrayList<>();
+            for (Entry entry : sortedEntries(postedBy)) {
+                result.add(readMessage(entry));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        return readAll(null);
+    }
+
+    @Override
+    public List<Message> getMessagesByUser(int userId) {
+        return readAll(userId);
+    }
+
+    /**
+     * Reads the messages in chunks, so the callback never runs under the lock and compaction can move records in
+     * between chunks. A message changed or deleted after the iteration started is seen as it is when its chunk is
+     * read.
+     */
+    @Override
+    public void forEachMessage(Integer postedBy, Consumer<Message> action) {
+        int[] ids;
+        lock.readLock().lock();
+        try {
+            Entry[] entries = sortedEntries(postedBy);
+            ids = new int[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                ids[i] = entries[i].messageId;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (int from = 0; from < ids.length; from += 256) {
+            for (Message message : getMessagesByIds(Arrays.copyOfRange(ids, from, Math.min(from + 256, ids.length)))) {
+                action.accept(message);
+            }
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesPage(Integer postedBy, PageCursor after, int limit) {
+        List<Message> page = new ArrayList<>();
+        if (limit <= 0) {
+            return page;
+        }
+        PriorityQueue<Entry> heap = new PriorityQueue<>(limit + 1, BY_TIME.reversed());
+        lock.readLock().lock();
+        try {
+            int[] ids;
+            int count;
+            if (postedBy == null) {
+                ids = index.keys();
+                count = ids.length;
+            } else {
+                Postings postings = byUser.get(postedBy);
+                ids = postings == null ? new int[0] : postings.array();
+                count = postings == null ? 0 : postings.size();
+            }
+            for (int i = 0; i < count; i++) {
+                Entry entry = index.get(ids[i]);
+                if (after != null && (entry.timePostedEpoch < after.getTimePostedEpoch()
+                        || entry.timePostedEpoch == after.getTimePostedEpoch()
+                        && entry.messageId <= after.getMessageId())) {
+                    continue;
+                }
+                heap.add(entry);
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            }
+            Entry[] entries = heap.toArray(new Entry[0]);
+            Arrays.sort(entries, BY_TIME);
+            for (Entry entry : entries) {
+                page.add(readMessage(entry));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return page;
+    }
+
+    /**
+     * Filters on the in-heap index entries, so only messages in range are read from the log.
+     */
+    @Override
+    public List<Message> getMessagesByTime(Integer postedBy, long since, long until) {
+        List<Message> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            List<Entry> matching = new ArrayList<>();
+            for (Entry entry : sortedEntries(postedBy)) {
+                if (entry.timePostedEpoch >= since && entry.timePostedEpoch < until) {
+                    matching.add(entry);
+                }
+            }
+            matching.sort(BY_TIME);
+            for (Entry entry : matching) {
+                result.add(readMessage(entry));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public Message getFirstMessage(int postedBy) {
+        return edgeMessage(postedBy, -1);
+    }
+
+    @Override
+    public Message getLastMessage(int postedBy) {
+        return edgeMessage(postedBy, 1);
+    }
+
+    /**
+     * @param direction -1 for the first message in (time_posted_epoch, message_id) order, 1 for the last
+     */
+    private Message edgeMessage(int postedBy, int direction) {
+        lock.readLock().lock();
+        try {
+            Postings postings = byUser.get(postedBy);
+            Entry edge = null;
+            for (int i = 0; postings != null && i < postings.size(); i++) {
+                Entry entry = index.get(postings.get(i));
+                if (edge == null || Integer.signum(BY_TIME.compare(entry, edge)) == direction) {
+                    edge = entry;
+                }
+            }
+            return edge == null ? null : readMessage(edge);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesByIds(int[] messageIds) {
+        int[] ids = messageIds.clone();
+        Arrays.sort(ids);
+        List<Message> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                Entry entry = i > 0 && ids[i] == ids[i - 1] ? null : index.get(ids[i]);
+                if (entry != null) {
+                    result.add(readMessage(entry));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public Message getMessageById(int messageId) {
+        lock.readLock().lock();
+        try {
+            Entry entry = index.get(messageId);
+            return entry == null ? null : readMessage(entry);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message updateMessage(int messageId, String newText) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = index.get(messageId);
+            if (entry == null) {
+                return null;
+            }
+            Message previous = readMessage(entry);
+            appendPut(messageId, entry.postedBy, newText, entry.timePostedEpoch);
+            sync();
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Message deleteMessage(int messageId) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = index.get(messageId);
+            if (entry == null) {
+                return null;
+            }
+            Message deleted = readMessage(entry);
+            appendDelete(messageId);
+            index.remove(messageId);
+            unindex(entry);
+            segments.get(entry.segment).garbage += entry.length;
+            sync();
+            return deleted;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites every sealed segment whose share of garbage is at least minGarbageRatio: its live records are
+     * appended to the active segment, and the file is deleted. Readers wait while one segment is being moved.
+     *
+     * @param minGarbageRatio 0 to compact every sealed segment, 1 to compact only segments with no live records
+     * @return the number of segments deleted
+     */
+    public int compact(double minGarbageRatio) {
+        List<Integer> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                if (segment != active && segment.garbageRatio() >= minGarbageRatio) {
+                    candidates.add(segment.number);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        int deleted = 0;
+        for (int number : candidates) {
+            lock.writeLock().lock();
+            try {
+                Segment segment = segments.get(number);
+                if (segment == null || segment == active) {
+                    continue;
+                }
+                boolean olderExists = segments.firstKey() < number;
+                int offset = SEGMENT_HEADER;
+                Record record;
+                while ((record = segment.read(offset)) != null) {
+                    if (record.type == PUT) {
+                        Entry entry = index.get(record.messageId);
+                        if (entry != null && entry.segment == number && entry.offset == offset) {
+                            appendPut(record.messageId, record.postedBy, record.text, record.timePostedEpoch);
+                            // moving a live record creates no garbage in the segment about to be deleted
+                        }
+                    } else if (olderExists) {
+                        appendDelete(record.messageId);
+                    }
+                    offset += record.length;
+                }
+                active.force();
+                segments.remove(number);
+                segment.close();
+                Files.deleteIfExists(segment.file);
+                deleted++;
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Calls {@link #compact} on a background thread every intervalMillis.
+     *
+     * @param intervalMillis the time between compactions
+     * @param minGarbageRatio the share of garbage that makes a segment worth rewriting
+     */
+    public synchronized void startCompaction(long intervalMillis, double minGarbageRatio) {
+        if (compactor != null || intervalMillis <= 0) {
+            return;
+        }
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-log-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(() -> compact(minGarbageRatio), intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the number of segment files
+     */
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of live messages
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forces every change to disk and closes the segment files. The store must not be used afterwards.
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (compactor != null) {
+                compactor.shutdownNow();
+            }
+            for (Segment segment : segments.values()) {
+                segment.force();
+                segment.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Where the latest version of a message is, plus the fields queries filter and sort on.
+     */
+    private static class Entry {
+        private final int messageId;
+        private final int postedBy;
+        private final long timePostedEpoch;
+        private final int segment;
+        private final int offset;
+        private final int length;
+
+        private Entry(int messageId, int postedBy, long timePostedEpoch, int segment, int offset, int length) {
+            this.messageId = messageId;
+            this.postedBy = postedBy;
+            this.timePostedEpoch = timePostedEpoch;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static class Record {
+        private byte type;
+        private int messageId;
+        private int postedBy;
+        private long timePostedEpoch;
+        private String text;
+        private int length;
+    }
+
+    /**
+     * One mapped segment file.
+     */
+    private static class Segment {
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer map;
+        private final int number;
+        private final int baseNextId;
+        private int position = SEGMENT_HEADER;
+        private long garbage;
+        private int tombstones;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer map, int number, int baseNextId) {
+            this.file = file;
+            this.channel = channel;
+            this.map = map;
+            this.number = number;
+            this.baseNextId = baseNextId;
+        }
+
+        private static Segment create(Path file, int number, int nextId, int size) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.putInt(0, SEGMENT_MAGIC).putInt(4, number).putInt(8, nextId);
+            return new Segment(file, channel, map, number, nextId);
+        }
+
+        private static Segment open(Path file, int size) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+            if (map.getInt(0) != SEGMENT_MAGIC) {
+                channel.close();
+                throw new IOException("not a message log segment: " + file);
+            }
+            return new Segment(file, channel, map, map.getInt(4), map.getInt(8));
+        }
+
+        /**
+         * @return the record at offset, or null at the end of the written part or at a torn or corrupt record
+         */
+        private Record read(int offset) {
+            if (offset + RECORD_HEADER + BODY_FIXED > map.capacity()) {
+                return null;
+            }
+            int bodyLength = map.getInt(offset);
+            if (bodyLength < BODY_FIXED || offset + RECORD_HEADER + bodyLength > map.capacity()) {
+                return null;
+            }
+            ByteBuffer body = map.duplicate();
+            body.position(offset + RECORD_HEADER).limit(offset + RECORD_HEADER + bodyLength);
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != map.getInt(offset + 4)) {
+                return null;
+            }
+            Record record = new Record();
+            record.type = body.get();
+            record.messageId = body.getInt();
+            record.postedBy = body.getInt();
+            record.timePostedEpoch = body.getLong();
+            byte[] text = new byte[body.getShort() & 0xFFFF];
+            body.get(text);
+            record.text = new String(text, StandardCharsets.UTF_8);
+            record.length = RECORD_HEADER + bodyLength;
+            return record;
+        }
+
+        private double garbageRatio() {
+            long used = position - SEGMENT_HEADER;
+            return used == 0 ? 1 : (double) (garbage + (long) tombstones * (RECORD_HEADER + BODY_FIXED)) / used;
+        }
+
+        private void force() {
+            map.force();
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
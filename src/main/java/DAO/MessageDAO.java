@@ -2,15 +2,77 @@ package DAO;
 
 import Model.Message;
 import Util.ConnectionUtil;
+import Util.IntIdGenerator;
+import Util.Metrics;
+import Util.PageCursor;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Data Access Object for interacting with the 'message' table in the database.
  */
-public class MessageDAO {
+public class MessageDAO implements MessageStore {
+
+    /**
+     * How many rows forEachMessage asks the driver to fetch at a time.
+     */
+    private static final int STREAM_FETCH_SIZE = 256;
+
+    /**
+     * True when socialmedia.ids.mode=app: inserts carry a message_id from {@link IntIdGenerator} instead of reading
+     * back the one the identity column generated.
+     */
+    private static final boolean APP_IDS = IntIdGenerator.isEnabled();
+
+    /**
+     * The time range query over all messages. It names its index, because on a small or freshly created table H2
+     * has no statistics and may pick another one; message_time_idx seeks straight to since and already returns the
+     * rows in order. Public so tests can check the plan with EXPLAIN.
+     */
+    public static final String TIME_RANGE_SQL = "SELECT * FROM message USE INDEX (message_time_idx) "
+            + "WHERE time_posted_epoch >= ? AND time_posted_epoch < ? ORDER BY time_posted_epoch, message_id";
+
+    /**
+     * The time range query over one user's messages. Without the hint H2 picks the foreign key index on posted_by
+     * until the table has statistics, and then reads every message of the user instead of only those in range.
+     */
+    public static final String USER_TIME_RANGE_SQL = "SELECT * FROM message USE INDEX (message_posted_by_time_idx) "
+            + "WHERE posted_by = ? AND time_posted_epoch >= ? AND time_posted_epoch < ? "
+            + "ORDER BY time_posted_epoch, message_id";
+
+    /**
+     * A user's first message: one seek into message_posted_by_time_idx, whatever the number of messages. posted_by
+     * leads the ORDER BY only so that H2 sees the order is the index's own.
+     */
+    public static final String FIRST_MESSAGE_SQL = "SELECT * FROM message USE INDEX (message_posted_by_time_idx) "
+            + "WHERE posted_by = ? ORDER BY posted_by, time_posted_epoch, message_id LIMIT 1";
+
+    /**
+     * A user's last message. H2 only reads indexes forwards, so this one has a descending index of its own.
+     */
+    public static final String LAST_MESSAGE_SQL = "SELECT * FROM message USE INDEX (message_posted_by_time_desc_idx) "
+            + "WHERE posted_by = ? ORDER BY posted_by, time_posted_epoch DESC, message_id DESC LIMIT 1";
+
+    /**
+     * One page of all messages, after a (time_posted_epoch, message_id) cursor. The first page binds a cursor before
+     * any real row, so both pages and first pages share this one statement and its seek into message_time_idx.
+     */
+    public static final String PAGE_SQL = "SELECT * FROM message USE INDEX (message_time_idx) "
+            + "WHERE time_posted_epoch >= ? AND (time_posted_epoch > ? OR message_id > ?) "
+            + "ORDER BY time_posted_epoch, message_id LIMIT ?";
+
+    /**
+     * One page of a user's messages. As with FIRST_MESSAGE_SQL, posted_by leads the ORDER BY so that H2 reads the
+     * rows in index order and stops after limit of them.
+     */
+    public static final String USER_PAGE_SQL = "SELECT * FROM message USE INDEX (message_posted_by_time_idx) "
+            + "WHERE posted_by = ? AND time_posted_epoch >= ? AND (time_posted_epoch > ? OR message_id > ?) "
+            + "ORDER BY posted_by, time_posted_epoch, message_id LIMIT ?";
 
     /**
      * Inserts a new message into the database and returns the created Message object.
@@ -19,33 +81,152 @@ public class MessageDAO {
      * @return the inserted Message with generated ID, or null if insertion fails
      */
     public Message insertMessage(Message message) {
+        long start = System.nanoTime();
         try (Connection conn = ConnectionUtil.getConnection()) {
-            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
-            PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            ps.setInt(1, message.getPosted_by());
-            ps.setString(2, message.getMessage_text());
-            ps.setLong(3, message.getTime_posted_epoch());
+            PreparedStatement ps = prepareInsert(conn);
+            int messageId = 0;
+            int index = 1;
+            if (APP_IDS) {
+                messageId = IntIdGenerator.forColumn(conn, "message", "message_id").nextId();
+                ps.setInt(index++, messageId);
+            }
+            ps.setInt(index++, message.getPosted_by());
+            ps.setString(index++, message.getMessage_text());
+            ps.setLong(index, message.getTime_posted_epoch());
             ps.executeUpdate();
 
+            if (APP_IDS) {
+                return new Message(messageId, message.getPosted_by(), message.getMessage_text(),
+                        message.getTime_posted_epoch());
+            }
             ResultSet rs = ps.getGeneratedKeys();
             if (rs.next()) {
                 int generatedId = rs.getInt(1);
                 return new Message(generatedId, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
             }
         } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.insertMessage");
             e.printStackTrace();
+        } finally {
+            Metrics.recordDao("MessageDAO.insertMessage", start);
         }
         return null;
     }
 
+    /**
+     * Prepares the INSERT for one message: with an explicit message_id when IDs are assigned by the application,
+     * otherwise asking for the generated key.
+     */
+    private static PreparedStatement prepareInsert(Connection conn) throws SQLException {
+        if (APP_IDS) {
+            return conn.prepareStatement("INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) "
+                    + "VALUES (?, ?, ?, ?)");
+        }
+        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+        return conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+    }
+
+    /**
+     * Inserts many messages on one connection, in one transaction, with a single JDBC batch. Messages whose
+     * posted_by does not match an account are skipped up front, so one bad item cannot make the foreign key abort
+     * the whole batch. If the batch still fails, the transaction is rolled back and nothing is inserted.
+     *
+     * @param messages the messages to insert
+     * @return an array parallel to messages holding each inserted Message with its generated ID, or null where the
+     *         posted_by has no account; null instead of an array if the batch failed and was rolled back
+     */
+    public Message[] insertMessages(List<Message> messages) {
+        long start = System.nanoTime();
+        Message[] inserted = new Message[messages.size()];
+        if (messages.isEmpty()) {
+            return inserted;
+        }
+        try (Connection conn = ConnectionUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Set<Integer> accounts = findExistingAccounts(conn, messages);
+                PreparedStatement ps = prepareInsert(conn);
+                List<Integer> batched = new ArrayList<>();
+                for (int i = 0; i < messages.size(); i++) {
+                    if (accounts.contains(messages.get(i).getPosted_by())) {
+                        batched.add(i);
+                    }
+                }
+                // with application IDs the whole batch is numbered up front, and no generated keys are read back
+                int[] ids = APP_IDS && !batched.isEmpty()
+                        ? IntIdGenerator.forColumn(conn, "message", "message_id").nextIds(batched.size()) : null;
+                for (int n = 0; n < batched.size(); n++) {
+                    Message message = messages.get(batched.get(n));
+                    int index = 1;
+                    if (ids != null) {
+                        ps.setInt(index++, ids[n]);
+                    }
+                    ps.setInt(index++, message.getPosted_by());
+                    ps.setString(index++, message.getMessage_text());
+                    ps.setLong(index, message.getTime_posted_epoch());
+                    ps.addBatch();
+                }
+                if (ids != null) {
+                    ps.executeBatch();
+                    for (int n = 0; n < batched.size(); n++) {
+                        Message message = messages.get(batched.get(n));
+                        inserted[batched.get(n)] = new Message(ids[n], message.getPosted_by(),
+                                message.getMessage_text(), message.getTime_posted_epoch());
+                    }
+                } else if (!batched.isEmpty()) {
+                    ps.executeBatch();
+                    ResultSet rs = ps.getGeneratedKeys();
+                    for (int i : batched) {
+                        if (!rs.next()) {
+                            throw new SQLException("Expected " + batched.size() + " generated keys");
+                        }
+                        Message message = messages.get(i);
+                        inserted[i] = new Message(rs.getInt(1), message.getPosted_by(), message.getMessage_text(),
+                                message.getTime_posted_epoch());
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.insertMessages");
+            e.printStackTrace();
+            return null;
+        } finally {
+            Metrics.recordDao("MessageDAO.insertMessages", start);
+        }
+        return inserted;
+    }
+
+    /**
+     * @return the distinct posted_by values of the messages that match a row in the account table
+     */
+    private Set<Integer> findExistingAccounts(Connection conn, List<Message> messages) throws SQLException {
+        Set<Integer> requested = new HashSet<>();
+        for (Message message : messages) {
+            requested.add(message.getPosted_by());
+        }
+        Set<Integer> existing = new HashSet<>();
+        PreparedStatement ps = conn.prepareStatement("SELECT account_id FROM account WHERE account_id = ANY(?)");
+        ps.setArray(1, conn.createArrayOf("INTEGER", requested.toArray()));
+        ResultSet rs = ps.executeQuery();
+        while (rs.next()) {
+            existing.add(rs.getInt(1));
+        }
+        return existing;
+    }
+
     /**
      * Retrieves all messages from the database.
      *
      * @return a list of all Message records
      */
     public List<Message> getAllMessages() {
+        long start = System.nanoTime();
         List<Message> messages = new ArrayList<>();
-        try (Connection conn = ConnectionUtil.getConnection()) {
+        try (Connection conn = ConnectionUtil.getReadConnection()) {
             String sql = "SELECT * FROM message";
             PreparedStatement ps = conn.prepareStatement(sql);
             ResultSet rs = ps.executeQuery();
@@ -60,7 +241,10 @@ public class MessageDAO {
                 messages.add(message);
             }
         } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.getAllMessages");
             e.printStackTrace();
+        } finally {
+            Metrics.recordDao("MessageDAO.getAllMessages", start);
         }
         return messages;
     }
@@ -72,8 +256,9 @@ public class MessageDAO {
      * @return a list of Message objects associated with the user
      */
     public List<Message> getMessagesByUser(int userId) {
+        long start = System.nanoTime();
         List<Message> messages = new ArrayList<>();
-        try (Connection conn = ConnectionUtil.getConnection()) {
+        try (Connection conn = ConnectionUtil.getReadConnection()) {
             String sql = "SELECT * FROM message WHERE posted_by = ?";
             PreparedStatement ps = conn.prepareStatement(sql);
             ps.setInt(1, userId);
@@ -89,7 +274,176 @@ public class MessageDAO {
                 messages.add(message);
             }
         } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.getMessagesByUser");
             e.printStackTrace();
+        } finally {
+            Metrics.recordDao("MessageDAO.getMessagesByUser", start);
+        }
+        return messages;
+    }
+
+    /**
+     * Streams messages to a callback one row at a time, instead of collecting them into a list. The query runs with
+     * H2's lazy query execution, so rows are produced as the cursor advances and memory use stays flat however many
+     * rows match. The setting is switched back off before the connection is released.
+     *
+     * Exceptions thrown by the callback (for example an UncheckedIOException when the client goes away) stop the
+     * iteration and are passed on to the caller.
+     *
+     * @param postedBy the ID of the user whose messages to stream, or null for all messages
+     * @param action called once for every message, in message_id order
+     */
+    public void forEachMessage(Integer postedBy, Consumer<Message> action) {
+        long start = System.nanoTime();
+        String sql = postedBy == null
+                ? "SELECT * FROM message ORDER BY message_id"
+                : "SELECT * FROM message WHERE posted_by = ? ORDER BY message_id";
+        try (Connection conn = ConnectionUtil.getConnection()) {
+            Statement session = conn.createStatement();
+            session.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            try {
+                PreparedStatement ps = conn.prepareStatement(sql);
+                ps.setFetchSize(STREAM_FETCH_SIZE);
+                if (postedBy != null) {
+                    ps.setInt(1, postedBy);
+                }
+                ResultSet rs = ps.executeQuery();
+
+                while (rs.next()) {
+                    action.accept(mapMessage(rs));
+                }
+                rs.close();
+            } finally {
+                session.execute("SET LAZY_QUERY_EXECUTION FALSE");
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.forEachMessage");
+            e.printStackTrace();
+        } finally {
+            Metrics.recordDao("MessageDAO.forEachMessage", start);
+        }
+    }
+
+    /**
+     * Retrieves one page of messages in (time_posted_epoch, message_id) order using keyset pagination. The query
+     * seeks straight to the cursor position through message_time_idx (or message_posted_by_time_idx when filtering
+     * by user), so its cost does not grow with how deep into the list the page is.
+     *
+     * @param postedBy the ID of the user whose messages to list, or null for all messages
+     * @param after the position of the last message on the previous page, or null to start from the beginning
+     * @param limit the maximum number of messages to return
+     * @return up to limit messages that come after the cursor
+     */
+    public List<Message> getMessagesPage(Integer postedBy, PageCursor after, int limit) {
+        long start = System.nanoTime();
+        List<Message> messages = new ArrayList<>();
+        try (Connection conn = ConnectionUtil.getReadConnection()) {
+            PreparedStatement ps = preparePage(conn, postedBy, after, limit);
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                messages.add(mapMessage(rs));
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.getMessagesPage");
+            e.printStackTrace();
+        } finally {
+            Metrics.recordDao("MessageDAO.getMessagesPage", start);
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieves the messages posted in a time range. The bounds seek into message_time_idx (or
+     * message_posted_by_time_idx for one user), so only the rows in the range are read, in index order, whatever
+     * the size of the table.
+     *
+     * @param postedBy the ID of the user whose messages to list, or null for all messages
+     * @param since the earliest time_posted_epoch to include
+     * @param until the time_posted_epoch to stop before
+     * @return the matching messages in (time_posted_epoch, message_id) order
+     */
+    public List<Message> getMessagesByTime(Integer postedBy, long since, long until) {
+        long start = System.nanoTime();
+        List<Message> messages = new ArrayList<>();
+        try (Connection conn = ConnectionUtil.getReadConnection()) {
+            PreparedStatement ps = conn.prepareStatement(postedBy == null ? TIME_RANGE_SQL : USER_TIME_RANGE_SQL);
+            int index = 1;
+            if (postedBy != null) {
+                ps.setInt(index++, postedBy);
+            }
+            ps.setLong(index++, since);
+            ps.setLong(index, until);
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                messages.add(mapMessage(rs));
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.getMessagesByTime");
+            e.printStackTrace();
+        } finally {
+            Metrics.recordDao("MessageDAO.getMessagesByTime", start);
+        }
+        return messages;
+    }
+
+    @Override
+    public Message getFirstMessage(int postedBy) {
+        return getEdgeMessage("MessageDAO.getFirstMessage", FIRST_MESSAGE_SQL, postedBy);
+    }
+
+    @Override
+    public Message getLastMessage(int postedBy) {
+        return getEdgeMessage("MessageDAO.getLastMessage", LAST_MESSAGE_SQL, postedBy);
+    }
+
+    private Message getEdgeMessage(String operation, String sql, int postedBy) {
+        long start = System.nanoTime();
+        try (Connection conn = ConnectionUtil.getReadConnection()) {
+            PreparedStatement ps = conn.prepareStatement(sql);
+            ps.setInt(1, postedBy);
+            ResultSet rs = ps.executeQuery();
+            return rs.next() ? mapMessage(rs) : null;
+        } catch (SQLException e) {
+            Metrics.recordDaoError(operation);
+            e.printStackTrace();
+            return null;
+        } finally {
+            Metrics.recordDao(operation, start);
+        }
+    }
+
+    /**
+     * Retrieves the messages with the given IDs in one query, through the primary key index.
+     *
+     * @param messageIds the IDs to look up
+     * @return the messages that exist, in message_id order
+     */
+    public List<Message> getMessagesByIds(int[] messageIds) {
+        long start = System.nanoTime();
+        List<Message> messages = new ArrayList<>();
+        if (messageIds.length == 0) {
+            return messages;
+        }
+        Integer[] ids = new Integer[messageIds.length];
+        for (int i = 0; i < messageIds.length; i++) {
+            ids[i] = messageIds[i];
+        }
+        try (Connection conn = ConnectionUtil.getReadConnection()) {
+            String sql = "SELECT * FROM message WHERE message_id = ANY(?) ORDER BY message_id";
+            PreparedStatement ps = conn.prepareStatement(sql);
+            ps.setArray(1, conn.createArrayOf("INTEGER", ids));
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                messages.add(mapMessage(rs));
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.getMessagesByIds");
+            e.printStackTrace();
+        } finally {
+            Metrics.recordDao("MessageDAO.getMessagesByIds", start);
         }
         return messages;
     }
@@ -101,7 +455,8 @@ public class MessageDAO {
      * @return the Message object if found, or null if not found
      */
     public Message getMessageById(int messageId) {
-        try (Connection conn = ConnectionUtil.getConnection()) {
+        long start = System.nanoTime();
+        try (Connection conn = ConnectionUtil.getReadConnection()) {
             String sql = "SELECT * FROM message WHERE message_id = ?";
             PreparedStatement ps = conn.prepareStatement(sql);
             ps.setInt(1, messageId);
@@ -116,52 +471,98 @@ public class MessageDAO {
                 );
             }
         } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.getMessageById");
             e.printStackTrace();
+        } finally {
+            Metrics.recordDao("MessageDAO.getMessageById", start);
         }
         return null;
     }
 
     /**
-     * Updates the text of an existing message.
+     * Updates the text of an existing message and returns the row as it was before, in the same statement, using
+     * H2's OLD TABLE data change delta table. The change and the read are one round trip and one atomic statement,
+     * so no other writer can slip in between them. The updated row is the returned one with newText.
      *
      * @param messageId the ID of the message to update
      * @param newText the new message text
-     * @return the updated Message object, or null if the update fails
+     * @return the Message as it was before the update, or null if the update fails
      */
     public Message updateMessage(int messageId, String newText) {
+        long start = System.nanoTime();
         try (Connection conn = ConnectionUtil.getConnection()) {
-            String sql = "UPDATE message SET message_text = ? WHERE message_id = ?";
+            String sql = "SELECT * FROM OLD TABLE (UPDATE message SET message_text = ? WHERE message_id = ?)";
             PreparedStatement ps = conn.prepareStatement(sql);
             ps.setString(1, newText);
             ps.setInt(2, messageId);
-            int rowsAffected = ps.executeUpdate();
+            ResultSet rs = ps.executeQuery();
 
-            if (rowsAffected > 0) {
-                return getMessageById(messageId);
+            if (rs.next()) {
+                return mapMessage(rs);
             }
         } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.updateMessage");
             e.printStackTrace();
+        } finally {
+            Metrics.recordDao("MessageDAO.updateMessage", start);
         }
         return null;
     }
 
     /**
-     * Deletes a message by its ID.
+     * Deletes a message by its ID and returns the row as it was before the delete, using H2's OLD TABLE data change
+     * delta table, so the delete and the read are one atomic round trip.
      *
      * @param messageId the ID of the message to delete
-     * @return true if the message was deleted, false otherwise
+     * @return the deleted Message, or null if no message had that ID
      */
-    public boolean deleteMessage(int messageId) {
+    public Message deleteMessage(int messageId) {
+        long start = System.nanoTime();
         try (Connection conn = ConnectionUtil.getConnection()) {
-            String sql = "DELETE FROM message WHERE message_id = ?";
+            String sql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ?)";
             PreparedStatement ps = conn.prepareStatement(sql);
             ps.setInt(1, messageId);
-            int rowsAffected = ps.executeUpdate();
+            ResultSet rs = ps.executeQuery();
 
-            return rowsAffected > 0;
+            if (rs.next()) {
+                return mapMessage(rs);
+            }
         } catch (SQLException e) {
+            Metrics.recordDaoError("MessageDAO.deleteMessage");
             e.printStackTrace();
+        } finally {
+            Metrics.recordDao("MessageDAO.deleteMessage", start);
+        }
+        return null;
+    }
+
+    /**
+     * Prepares PAGE_SQL or USER_PAGE_SQL. A null cursor is bound as one that sorts before every row.
+     */
+    static PreparedStatement preparePage(Connection conn, Integer postedBy, PageCursor after, int limit)
+            throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(postedBy == null ? PAGE_SQL : USER_PAGE_SQL);
+        long time = after == null ? Long.MIN_VALUE : after.getTimePostedEpoch();
+        int index = 1;
+        if (postedBy != null) {
+            ps.setInt(index++, postedBy);
         }
-        return false;
+        ps.setLong(index++, time);
+        ps.setLong(index++, time);
+        ps.setInt(index++, after == null ? Integer.MIN_VALUE : after.getMessageId());
+        ps.setInt(index, limit);
+        return ps;
+    }
+
+    /**
+     * Builds a Message from the current row of a ResultSet over the message table.
+     */
+    static Message mapMessage(ResultSet rs) throws SQLException {
+        return new Message(
+            rs.getInt("message_id"),
+            rs.getInt("posted_by"),
+            rs.getString("message_text"),
+            rs.getLong("time_posted_epoch")
+        );
     }
 }
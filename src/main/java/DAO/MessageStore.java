@@ -0,0 +1,107 @@
+package DAO;
+
+import Model.Message;
+import Util.PageCursor;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The storage operations MessageService needs for messages. {@link MessageDAO} implements them over the H2 message
+ * table (and {@link ShardedMessageDAO} over several), {@link InMemoryMessageStore} over maps in the heap.
+ *
+ * Implementations are thread-safe. Methods that fail report it the way MessageDAO always has: null for a single
+ * message, an empty list for a query.
+ */
+public interface MessageStore {
+
+    /**
+     * @param message the message to insert; its message_id is ignored
+     * @return the inserted Message with its new ID, or null if posted_by has no account or the insert failed
+     */
+    Message insertMessage(Message message);
+
+    /**
+     * @param messages the messages to insert, all or nothing
+     * @return an array parallel to messages holding each inserted Message, or null where the posted_by has no
+     *         account; null instead of an array if the insert failed
+     */
+    Message[] insertMessages(List<Message> messages);
+
+    /**
+     * @return every message, in message_id order
+     */
+    List<Message> getAllMessages();
+
+    /**
+     * @param userId the ID of the user
+     * @return the messages posted by that user
+     */
+    List<Message> getMessagesByUser(int userId);
+
+    /**
+     * Passes messages to a callback one at a time, without collecting them into a list first. An exception from
+     * the callback stops the iteration and is passed on.
+     *
+     * @param postedBy the ID of the user whose messages to visit, or null for all messages
+     * @param action called once for every message, in message_id order
+     */
+    void forEachMessage(Integer postedBy, Consumer<Message> action);
+
+    /**
+     * @param postedBy the ID of the user whose messages to list, or null for all messages
+     * @param after the position of the last message on the previous page, or null to start from the beginning
+     * @param limit the maximum number of messages to return
+     * @return up to limit messages after the cursor, in (time_posted_epoch, message_id) order
+     */
+    List<Message> getMessagesPage(Integer postedBy, PageCursor after, int limit);
+
+    /**
+     * @param postedBy the ID of the user whose messages to list, or null for all messages
+     * @param since the earliest time_posted_epoch to include
+     * @param until the time_posted_epoch to stop before
+     * @return the messages with since <= time_posted_epoch < until, in (time_posted_epoch, message_id) order
+     */
+    List<Message> getMessagesByTime(Integer postedBy, long since, long until);
+
+    /**
+     * @param postedBy the ID of the user
+     * @return the user's first message in (time_posted_epoch, message_id) order, or null if the user has none
+     */
+    Message getFirstMessage(int postedBy);
+
+    /**
+     * @param postedBy the ID of the user
+     * @return the user's last message in (time_posted_epoch, message_id) order, or null if the user has none
+     */
+    Message getLastMessage(int postedBy);
+
+    /**
+     * @param messageIds the IDs to look up
+     * @return the messages that exist, in message_id order
+     */
+    List<Message> getMessagesByIds(int[] messageIds);
+
+    /**
+     * @param messageId the ID of the message
+     * @return the message, or null if there is none
+     */
+    Message getMessageById(int messageId);
+
+    /**
+     * Replaces the text of a message. Like deleteMessage, this returns the row as it was before the change, read
+     * atomically with it, so callers that keep derived data (such as text length totals) see the exact old value;
+     * the new row is the old one with newText.
+     *
+     * @param messageId the ID of the message to update
+     * @param newText the new message text
+     * @return the message as it was before the update, or null if there is no such message
+     */
+    Message updateMessage(int messageId, String newText);
+
+    /**
+     * @param messageId the ID of the message to delete
+     * @return the message as it was before the delete, or null if there is no such message
+     */
+    Message deleteMessage(int messageId);
+}
@@ -0,0 +1,633 @@
+package DAO;
+
+import Model.Message;
+import Util.Metrics;
+import Util.PageCursor;
+import Util.ReplicaRouter;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+/**
+ * A MessageDAO that spreads the message table over N databases, partitioned by a hash of posted_by.
+ *
+ * Shard 0 is the main database and also holds the account table; shards 1 to N-1 hold only a message table, which is
+ * created on first use. Message IDs encode their shard: shard s draws IDs from its own sequence, message_shard_id_seq,
+ * which starts at s (or N for shard 0) and steps by N, so message_id % N is the shard, and lookups, updates and deletes
+ * by ID go straight to one database. Shard 0's identity column is left as the schema script made it; the sequence is
+ * not a table, so it also survives the script dropping and recreating the table, and shard 0 keeps its stride. When
+ * replicas are configured, shard 0 is read and written through the ReplicaRouter, like every other DAO that uses the
+ * main database. A user's messages all live on one shard, so getMessagesByUser and inserts touch only that shard.
+ * Queries over all users run on every shard in parallel and are merged in the order the unsharded DAO returns them.
+ *
+ * Shards other than 0 cannot have a foreign key to account, so inserts check posted_by against shard 0 first.
+ * Accounts are never deleted, so the check cannot go stale. A batch that spans shards commits shard by shard after
+ * every shard's batch has run; a failure before the first commit rolls everything back, but a failure between two
+ * commits leaves the earlier shards committed.
+ *
+ * Switching an existing database to N shards moves nothing: rows already in shard 0 keep their IDs, the other shards
+ * start numbering above them, and lookups by ID fall back to shard 0 for IDs at or below the highest ID found there
+ * at startup. Rebalancing those rows onto their users' shards is left to an offline migration.
+ */
+public class ShardedMessageDAO extends MessageDAO {
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService fanOut = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "message-shard-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Comparator<Message> BY_ID = Comparator.comparingInt(Message::getMessage_id);
+    private static final Comparator<Message> BY_TIME = Comparator.comparingLong(Message::getTime_posted_epoch)
+            .thenComparingInt(Message::getMessage_id);
+
+    private static final String INSERT_SQL = "INSERT INTO message (message_id, posted_by, message_text, "
+            + "time_posted_epoch) VALUES (NEXT VALUE FOR message_shard_id_seq, ?, ?, ?)";
+    private static final String[] GENERATED_ID = {"MESSAGE_ID"};
+
+    private final List<DataSource> shards;
+    private final ReplicaRouter router;
+    private final int shardCount;
+    private final int legacyMaxId;
+
+    /**
+     * @param shards the shard databases; the first one holds the account table
+     */
+    public ShardedMessageDAO(List<DataSource> shards) {
+        this(shards, null);
+    }
+
+    /**
+     * @param shards the shard databases; the first one holds the account table
+     * @param router the router in front of shard 0, or null to use shard 0's DataSource directly
+     */
+    public ShardedMessageDAO(List<DataSource> shards, ReplicaRouter router) {
+        this.shards = new ArrayList<>(shards);
+        this.router = router;
+        this.shardCount = shards.size();
+        this.legacyMaxId = prepareShards();
+    }
+
+    /**
+     * Creates the message table on shards 1 to N-1, and on every shard points message_shard_id_seq at the next ID
+     * of that shard's stride.
+     *
+     * @return the highest message_id on shard 0 that was handed out before sharding
+     */
+    private int prepareShards() {
+        int legacy = 0;
+        for (int shard = 0; shard < shardCount; shard++) {
+            try (Connection conn = shards.get(shard).getConnection(); Statement statement = conn.createStatement()) {
+                if (shard != 0) {
+                    statement.execute("CREATE TABLE IF NOT EXISTS message (message_id INT PRIMARY KEY, "
+                            + "posted_by INT, message_text VARCHAR(255), time_posted_epoch BIGINT)");
+                    statement.execute("CREATE INDEX IF NOT EXISTS message_time_idx "
+                            + "ON message (time_posted_epoch, message_id)");
+                    statement.execute("CREATE INDEX IF NOT EXISTS message_posted_by_time_idx "
+                            + "ON message (posted_by, time_posted_epoch, message_id)");
+                    statement.execute("CREATE INDEX IF NOT EXISTS message_posted_by_time_desc_idx "
+                            + "ON message (posted_by, time_posted_epoch DESC, message_id DESC)");
+                }
+                ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(message_id), 0) FROM message");
+                rs.next();
+                int max = rs.getInt(1);
+                if (shard == 0) {
+                    legacy = max;
+                }
+                // the sequence may already be past max (rows deleted, or already sharded); never go backwards
+                ResultSet next = statement.executeQuery("SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES "
+                        + "WHERE SEQUENCE_NAME = 'MESSAGE_SHARD_ID_SEQ'");
+                long base = next.next() ? next.getLong(1) : 0;
+                // and start above every pre-sharding ID so the legacy rows left on shard 0 never collide
+                long floor = Math.max(Math.max(max, legacy) + 1L, base);
+                long first = floor + Math.floorMod(shard - floor, (long) shardCount);
+                statement.execute("CREATE SEQUENCE IF NOT EXISTS message_shard_id_seq START WITH " + first
+                        + " INCREMENT BY " + shardCount);
+                statement.execute("ALTER SEQUENCE message_shard_id_seq RESTART WITH " + first
+                        + " INCREMENT BY " + shardCount);
+            } catch (SQLException e) {
+                throw new IllegalStateException("could not prepare message shard " + shard, e);
+            }
+        }
+        return legacy;
+    }
+
+    /**
+     * @param postedBy an account ID
+     * @return the shard that holds that account's messages
+     */
+    public int shardForUser(int postedBy) {
+        int h = postedBy * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), shardCount);
+    }
+
+    /**
+     * @param messageId a message ID
+     * @return the shard that message was created on
+     */
+    public int shardForMessage(int messageId) {
+        return Math.floorMod(messageId, shardCount);
+    }
+
+    /**
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @return a connection for writes, and for reads that must not lag, eg the account check before an insert
+     */
+    private Connection connect(int shard) throws SQLException {
+        return shard == 0 && router != null ? router.getWriteConnection() : shards.get(shard).getConnection();
+    }
+
+    /**
+     * @return a connection for queries only. On shard 0 that may be a replica; the router decides how fresh it
+     *         must be from state kept per thread, so shard 0 is only ever read on the caller's own thread.
+     */
+    private Connection connectForRead(int shard) throws SQLException {
+        return shard == 0 && router != null ? router.getReadConnection() : shards.get(shard).getConnection();
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        long start = System.nanoTime();
+        int shard = shardForUser(message.getPosted_by());
+        try (Connection conn = connect(shard)) {
+            if (shard != 0 && !accountExists(message.getPosted_by())) {
+                return null;
+            }
+            PreparedStatement ps = conn.prepareStatement(INSERT_SQL, GENERATED_ID);
+            ps.setInt(1, message.getPosted_by());
+            ps.setString(2, message.getMessage_text());
+            ps.setLong(3, message.getTime_posted_epoch());
+            ps.executeUpdate();
+
+            ResultSet rs = ps.getGeneratedKeys();
+            if (rs.next()) {
+                return new Message(rs.getInt(1), message.getPosted_by(), message.getMessage_text(),
+                        message.getTime_posted_epoch());
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError("ShardedMessageDAO.insertMessage");
+            e.printStackTrace();
+        } finally {
+            Metrics.recordDao("ShardedMessageDAO.insertMessage", start);
+        }
+        return null;
+    }
+
+    private boolean accountExists(int accountId) throws SQLException {
+        try (Connection conn = connect(0)) {
+            PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM account WHERE account_id = ?");
+            ps.setInt(1, accountId);
+            return ps.executeQuery().next();
+        }
+    }
+
+    @Override
+    public Message[] insertMessages(List<Message> messages) {
+        long start = System.nanoTime();
+        Message[] inserted = new Message[messages.size()];
+        if (messages.isEmpty()) {
+            return inserted;
+        }
+        List<Connection> open = new ArrayList<>();
+        try {
+            Set<Integer> accounts = findExistingAccounts(messages);
+            List<List<Integer>> byShard = new ArrayList<>();
+            for (int shard = 0; shard < shardCount; shard++) {
+                byShard.add(new ArrayList<>());
+            }
+            for (int i = 0; i < messages.size(); i++) {
+                if (accounts.contains(messages.get(i).getPosted_by())) {
+                    byShard.get(shardForUser(messages.get(i).getPosted_by())).add(i);
+                }
+            }
+            for (int shard = 0; shard < shardCount; shard++) {
+                List<Integer> indexes = byShard.get(shard);
+                if (indexes.isEmpty()) {
+                    continue;
+                }
+                Connection conn = connect(shard);
+                open.add(conn);
+                conn.setAutoCommit(false);
+                PreparedStatement ps = conn.prepareStatement(INSERT_SQL, GENERATED_ID);
+                for (int i : indexes) {
+                    Message message = messages.get(i);
+                    ps.setInt(1, message.getPosted_by());
+                    ps.setString(2, message.getMessage_text());
+                    ps.setLong(3, message.getTime_posted_epoch());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                ResultSet rs = ps.getGeneratedKeys();
+                for (int i : indexes) {
+                    if (!rs.next()) {
+                        throw new SQLException("Expected " + indexes.size() + " generated keys");
+                    }
+                    Message message = messages.get(i);
+                    inserted[i] = new Message(rs.getInt(1), message.getPosted_by(), message.getMessage_text(),
+                            message.getTime_posted_epoch());
+                }
+            }
+            for (Connection conn : open) {
+                conn.commit();
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError("ShardedMessageDAO.insertMessages");
+            e.printStackTrace();
+            for (Connection conn : open) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ignored) {
+                }
+            }
+            return null;
+        } finally {
+            for (Connection conn : open) {
+                try {
+                    conn.close();
+                } catch (SQLException ignored) {
+                }
+            }
+            Metrics.recordDao("ShardedMessageDAO.insertMessages", start);
+        }
+        return inserted;
+    }
+
+    private Set<Integer> findExistingAccounts(List<Message> messages) throws SQLException {
+        Set<Integer> requested = new HashSet<>();
+        for (Message message : messages) {
+            requested.add(message.getPosted_by());
+        }
+        Set<Integer> existing = new HashSet<>();
+        try (Connection conn = connect(0)) {
+            PreparedStatement ps = conn.prepareStatement("SELECT account_id FROM account WHERE account_id = ANY(?)");
+            ps.setArray(1, conn.createArrayOf("INTEGER", requested.toArray()));
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                existing.add(rs.getInt(1));
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * A query to run on one shard.
+     */
+    private interface ShardQuery {
+        List<Message> run(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Runs a query on every shard in parallel and merges the per-shard results, each already sorted by order.
+     */
+    private List<Message> fanOut(String operation, Comparator<Message> order, ShardQuery query) {
+        return fanOut(operation, order, query, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Runs a query on every shard in parallel, shard 0 on the calling thread and the others on the fan-out pool,
+     * and merges the per-shard results, each already sorted by order, up to limit messages.
+     */
+    private List<Message> fanOut(String operation, Comparator<Message> order, ShardQuery query, int limit) {
+        long start = System.nanoTime();
+        List<CompletableFuture<List<Message>>> futures = new ArrayList<>();
+        for (int shard = 1; shard < shardCount; shard++) {
+            int target = shard;
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try (Connection conn = connectForRead(target)) {
+                    return query.run(conn);
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }, fanOut));
+        }
+        List<List<Message>> results = new ArrayList<>();
+        try {
+            try (Connection conn = connectForRead(0)) {
+                results.add(query.run(conn));
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+            for (CompletableFuture<List<Message>> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            Metrics.recordDaoError(operation);
+            e.getCause().printStackTrace();
+            return new ArrayList<>();
+        } finally {
+            Metrics.recordDao(operation, start);
+        }
+        return merge(results, order, limit);
+    }
+
+    /**
+     * Merges sorted lists by repeatedly taking the smallest head, which costs one heap step per message taken
+     * instead of sorting every row of every list.
+     */
+    private static List<Message> merge(List<List<Message>> sortedLists, Comparator<Message> order, int limit) {
+        int total = 0;
+        PriorityQueue<Run> heads = new PriorityQueue<>(Math.max(sortedLists.size(), 1),
+                (a, b) -> order.compare(a.head(), b.head()));
+        for (List<Message> list : sortedLists) {
+            total += list.size();
+            if (!list.isEmpty()) {
+                heads.add(new Run(list));
+            }
+        }
+        List<Message> merged = new ArrayList<>(Math.min(total, limit));
+        while (merged.size() < limit && !heads.isEmpty()) {
+            Run run = heads.poll();
+            merged.add(run.head());
+            if (++run.next < run.messages.size()) {
+                heads.add(run);
+            }
+        }
+        return merged;
+    }
+
+    private static class Run {
+        private final List<Message> messages;
+        private int next;
+
+        private Run(List<Message> messages) {
+            this.messages = messages;
+        }
+
+        private Message head() {
+            return messages.get(next);
+        }
+    }
+
+    private static List<Message> readAll(PreparedStatement ps) throws SQLException {
+        List<Message> messages = new ArrayList<>();
+        ResultSet rs = ps.executeQuery();
+        while (rs.next()) {
+            messages.add(mapMessage(rs));
+        }
+        return messages;
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        return fanOut("ShardedMessageDAO.getAllMessages", BY_ID,
+                conn -> readAll(conn.prepareStatement("SELECT * FROM message ORDER BY message_id")));
+    }
+
+    @Override
+    public List<Message> getMessagesByUser(int userId) {
+        long start = System.nanoTime();
+        try (Connection conn = connectForRead(shardForUser(userId))) {
+            PreparedStatement ps = conn.prepareStatement("SELECT * FROM message WHERE posted_by = ?");
+            ps.setInt(1, userId);
+            return readAll(ps);
+        } catch (SQLException e) {
+            Metrics.recordDaoError("ShardedMessageDAO.getMessagesByUser");
+            e.printStackTrace();
+        } finally {
+            Metrics.recordDao("ShardedMessageDAO.getMessagesByUser", start);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Streams messages in message_id order. For a single user that is one query on one shard; for all messages it
+     * keeps a lazy cursor open on every shard and always hands over the smallest message_id among their heads, so
+     * memory stays flat as in the unsharded DAO.
+     */
+    @Override
+    public void forEachMessage(Integer postedBy, Consumer<Message> action) {
+        long start = System.nanoTime();
+        List<Connection> open = new ArrayList<>();
+        try {
+            List<Integer> targets = new ArrayList<>();
+            if (postedBy != null) {
+                targets.add(shardForUser(postedBy));
+            } else {
+                for (int shard = 0; shard < shardCount; shard++) {
+                    targets.add(shard);
+                }
+            }
+            PriorityQueue<Cursor> heads = new PriorityQueue<>(Comparator.comparingInt(c -> c.head.getMessage_id()));
+            for (int shard : targets) {
+                Connection conn = connect(shard);
+                open.add(conn);
+                conn.createStatement().execute("SET LAZY_QUERY_EXECUTION TRUE");
+                PreparedStatement ps = conn.prepareStatement(postedBy == null
+                        ? "SELECT * FROM message ORDER BY message_id"
+                        : "SELECT * FROM message WHERE posted_by = ? ORDER BY message_id");
+                ps.setFetchSize(256);
+                if (postedBy != null) {
+                    ps.setInt(1, postedBy);
+                }
+                Cursor cursor = new Cursor(ps.executeQuery());
+                if (cursor.advance()) {
+                    heads.add(cursor);
+                }
+            }
+            while (!heads.isEmpty()) {
+                Cursor cursor = heads.poll();
+                action.accept(cursor.head);
+                if (cursor.advance()) {
+                    heads.add(cursor);
+                }
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError("ShardedMessageDAO.forEachMessage");
+            e.printStackTrace();
+        } finally {
+            for (Connection conn : open) {
+                try {
+                    conn.createStatement().execute("SET LAZY_QUERY_EXECUTION FALSE");
+                    conn.close();
+                } catch (SQLException ignored) {
+                }
+            }
+            Metrics.recordDao("ShardedMessageDAO.forEachMessage", start);
+        }
+    }
+
+    private static class Cursor {
+        private final ResultSet rs;
+        private Message head;
+
+        private Cursor(ResultSet rs) {
+            this.rs = rs;
+        }
+
+        private boolean advance() throws SQLException {
+            head = rs.next() ? mapMessage(rs) : null;
+            return head != null;
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesPage(Integer postedBy, PageCursor after, int limit) {
+        ShardQuery query = conn -> readAll(preparePage(conn, postedBy, after, limit));
+        if (postedBy != null) {
+            long start = System.nanoTime();
+            try (Connection conn = connectForRead(shardForUser(postedBy))) {
+                return query.run(conn);
+            } catch (SQLException e) {
+                Metrics.recordDaoError("ShardedMessageDAO.getMessagesPage");
+                e.printStackTrace();
+                return new ArrayList<>();
+            } finally {
+                Metrics.recordDao("ShardedMessageDAO.getMessagesPage", start);
+            }
+        }
+        // every shard returns its own first limit rows; the first limit of the merge are the global page
+        return fanOut("ShardedMessageDAO.getMessagesPage", BY_TIME, query, limit);
+    }
+
+    @Override
+    public List<Message> getMessagesByTime(Integer postedBy, long since, long until) {
+        ShardQuery query = conn -> {
+            PreparedStatement ps = conn.prepareStatement(postedBy == null ? TIME_RANGE_SQL : USER_TIME_RANGE_SQL);
+            int index = 1;
+            if (postedBy != null) {
+                ps.setInt(index++, postedBy);
+            }
+            ps.setLong(index++, since);
+            ps.setLong(index, until);
+            return readAll(ps);
+        };
+        if (postedBy != null) {
+            long start = System.nanoTime();
+            try (Connection conn = connectForRead(shardForUser(postedBy))) {
+                return query.run(conn);
+            } catch (SQLException e) {
+                Metrics.recordDaoError("ShardedMessageDAO.getMessagesByTime");
+                e.printStackTrace();
+                return new ArrayList<>();
+            } finally {
+                Metrics.recordDao("ShardedMessageDAO.getMessagesByTime", start);
+            }
+        }
+        return fanOut("ShardedMessageDAO.getMessagesByTime", BY_TIME, query);
+    }
+
+    @Override
+    public Message getFirstMessage(int postedBy) {
+        return getEdgeMessage("ShardedMessageDAO.getFirstMessage", FIRST_MESSAGE_SQL, postedBy);
+    }
+
+    @Override
+    public Message getLastMessage(int postedBy) {
+        return getEdgeMessage("ShardedMessageDAO.getLastMessage", LAST_MESSAGE_SQL, postedBy);
+    }
+
+    private Message getEdgeMessage(String operation, String sql, int postedBy) {
+        long start = System.nanoTime();
+        try (Connection conn = connectForRead(shardForUser(postedBy))) {
+            PreparedStatement ps = conn.prepareStatement(sql);
+            ps.setInt(1, postedBy);
+            List<Message> found = readAll(ps);
+            return found.isEmpty() ? null : found.get(0);
+        } catch (SQLException e) {
+            Metrics.recordDaoError(operation);
+            e.printStackTrace();
+            return null;
+        } finally {
+            Metrics.recordDao(operation, start);
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesByIds(int[] messageIds) {
+        List<Message> messages = new ArrayList<>();
+        if (messageIds.length == 0) {
+            return messages;
+        }
+        return fanOut("ShardedMessageDAO.getMessagesByIds", BY_ID, conn -> {
+            PreparedStatement ps = conn.prepareStatement(
+                    "SELECT * FROM message WHERE message_id = ANY(?) ORDER BY message_id");
+            Integer[] ids = new Integer[messageIds.length];
+            for (int i = 0; i < messageIds.length; i++) {
+                ids[i] = messageIds[i];
+            }
+            ps.setArray(1, conn.createArrayOf("INTEGER", ids));
+            return readAll(ps);
+        });
+    }
+
+    /**
+     * Runs a single-row statement on the shard that owns a message ID, and on shard 0 as well for IDs handed out
+     * before sharding was turned on.
+     */
+    private Message byId(String operation, int messageId, boolean read, ShardQuery query) {
+        long start = System.nanoTime();
+        try {
+            int shard = shardForMessage(messageId);
+            try (Connection conn = read ? connectForRead(shard) : connect(shard)) {
+                List<Message> rows = query.run(conn);
+                if (!rows.isEmpty()) {
+                    return rows.get(0);
+                }
+            }
+            if (shard != 0 && messageId <= legacyMaxId) {
+                try (Connection conn = read ? connectForRead(0) : connect(0)) {
+                    List<Message> rows = query.run(conn);
+                    if (!rows.isEmpty()) {
+                        return rows.get(0);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            Metrics.recordDaoError(operation);
+            e.printStackTrace();
+        } finally {
+            Metrics.recordDao(operation, start);
+        }
+        return null;
+    }
+
+    @Override
+    public Message getMessageById(int messageId) {
+        return byId("ShardedMessageDAO.getMessageById", messageId, true, conn -> {
+            PreparedStatement ps = conn.prepareStatement("SELECT * FROM message WHERE message_id = ?");
+            ps.setInt(1, messageId);
+            return readAll(ps);
+        });
+    }
+
+    @Override
+    public Message updateMessage(int messageId, String newText) {
+        return byId("ShardedMessageDAO.updateMessage", messageId, false, conn -> {
+            PreparedStatement ps = conn.prepareStatement(
+                    "SELECT * FROM OLD TABLE (UPDATE message SET message_text = ? WHERE message_id = ?)");
+            ps.setString(1, newText);
+            ps.setInt(2, messageId);
+            return readAll(ps);
+        });
+    }
+
+    @Override
+    public Message deleteMessage(int messageId) {
+        return byId("ShardedMessageDAO.deleteMessage", messageId, false, conn -> {
+            PreparedStatement ps = conn.prepareStatement(
+                    "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ?)");
+            ps.setInt(1, messageId);
+            return readAll(ps);
+        });
+    }
+}
@@ -0,0 +1,126 @@
+package Model;
+
+import java.util.Objects;
+
+/**
+ * This is a class that models the message statistics of one account.
+ */
+public class AccountStats {
+    /**
+     * The ID of the account.
+     */
+    public int account_id;
+    /**
+     * The number of messages the account has posted and not deleted.
+     */
+    public long message_count;
+    /**
+     * The earliest time_posted_epoch among those messages, or null if there are none.
+     */
+    public Long first_posted_epoch;
+    /**
+     * The latest time_posted_epoch among those messages, or null if there are none.
+     */
+    public Long last_posted_epoch;
+    /**
+     * The mean length of their message_text, or 0 if there are none.
+     */
+    public double average_message_length;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public AccountStats() {
+    }
+
+    /**
+     * @param account_id the ID of the account
+     * @param message_count the number of messages
+     * @param first_posted_epoch the earliest post time, or null
+     * @param last_posted_epoch the latest post time, or null
+     * @param average_message_length the mean message length
+     */
+    public AccountStats(int account_id, long message_count, Long first_posted_epoch, Long last_posted_epoch,
+            double average_message_length) {
+        this.account_id = account_id;
+        this.message_count = message_count;
+        this.first_posted_epoch = first_posted_epoch;
+        this.last_posted_epoch = last_posted_epoch;
+        this.average_message_length = average_message_length;
+    }
+
+    public int getAccount_id() {
+        return account_id;
+    }
+
+    public void setAccount_id(int account_id) {
+        this.account_id = account_id;
+    }
+
+    public long getMessage_count() {
+        return message_count;
+    }
+
+    public void setMessage_count(long message_count) {
+        this.message_count = message_count;
+    }
+
+    public Long getFirst_posted_epoch() {
+        return first_posted_epoch;
+    }
+
+    public void setFirst_posted_epoch(Long first_posted_epoch) {
+        this.first_posted_epoch = first_posted_epoch;
+    }
+
+    public Long getLast_posted_epoch() {
+        return last_posted_epoch;
+    }
+
+    public void setLast_posted_epoch(Long last_posted_epoch) {
+        this.last_posted_epoch = last_posted_epoch;
+    }
+
+    public double getAverage_message_length() {
+        return average_message_length;
+    }
+
+    public void setAverage_message_length(double average_message_length) {
+        this.average_message_length = average_message_length;
+    }
+    /**
+     * Overriding the default equals() method adds functionality to tell when two objects are identical, allowing
+     * Assert.assertEquals to function.
+     * @param o the other object.
+     * @return true if o is equal to this object.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AccountStats stats = (AccountStats) o;
+        return account_id == stats.account_id && message_count == stats.message_count
+                && Objects.equals(first_posted_epoch, stats.first_posted_epoch)
+                && Objects.equals(last_posted_epoch, stats.last_posted_epoch)
+                && Double.compare(average_message_length, stats.average_message_length) == 0;
+    }
+    @Override
+    public int hashCode() {
+        return Objects.hash(account_id, message_count, first_posted_epoch, last_posted_epoch, average_message_length);
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "AccountStats{" +
+                "account_id=" + account_id +
+                ", message_count=" + message_count +
+                ", first_posted_epoch=" + first_posted_epoch +
+                ", last_posted_epoch=" + last_posted_epoch +
+                ", average_message_length=" + average_message_length +
+                '}';
+    }
+}
@@ -0,0 +1,61 @@
+package Model;
+
+/**
+ * This is a class that models the outcome of one item in a POST /messages/batch request.
+ */
+public class BatchResult {
+    /**
+     * The position of the item in the request array, starting from 0.
+     */
+    public int index;
+    /**
+     * 200 if the message was created, 400 if it failed validation, 500 if it was valid but could not be stored.
+     */
+    public int status;
+    /**
+     * The created message, including its generated message_id, or null if it was not created.
+     */
+    public Message message;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public BatchResult() {
+    }
+
+    /**
+     * @param index the position of the item in the request
+     * @param status the outcome for the item
+     * @param message the created message, or null
+     */
+    public BatchResult(int index, int status, Message message) {
+        this.index = index;
+        this.status = status;
+        this.message = message;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,69 @@
+package Model;
+
+/**
+ * This is a class that models one change to the message table, as published on the live message feed.
+ */
+public class MessageEvent {
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String DELETED = "deleted";
+    /**
+     * Sent to keep idle connections open; carries no message.
+     */
+    public static final String HEARTBEAT = "heartbeat";
+
+    /**
+     * A sequence number that increases with every event published by the same feed.
+     */
+    public long id;
+    /**
+     * One of created, updated, deleted or heartbeat.
+     */
+    public String type;
+    /**
+     * The message after the change, or as it was before it was deleted.
+     */
+    public Message message;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageEvent() {
+    }
+
+    /**
+     * @param id the sequence number of the event
+     * @param type the kind of change
+     * @param message the changed message, or null for a heartbeat
+     */
+    public MessageEvent(long id, String type, Message message) {
+        this.id = id;
+        this.type = type;
+        this.message = message;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,49 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models one page of a keyset-paginated list of messages.
+ */
+public class MessagePage {
+    /**
+     * The messages on this page, ordered by time_posted_epoch and then message_id.
+     */
+    public List<Message> messages;
+    /**
+     * An opaque cursor to pass back as ?cursor= to fetch the next page, or null if this is the last page.
+     */
+    public String next_cursor;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessagePage() {
+    }
+
+    /**
+     * @param messages the messages on this page
+     * @param next_cursor the cursor for the next page, or null
+     */
+    public MessagePage(List<Message> messages, String next_cursor) {
+        this.messages = messages;
+        this.next_cursor = next_cursor;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+    }
+
+    public String getNext_cursor() {
+        return next_cursor;
+    }
+
+    public void setNext_cursor(String next_cursor) {
+        this.next_cursor = next_cursor;
+    }
+}
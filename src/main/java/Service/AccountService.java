@@ -2,6 +2,8 @@ package Service;
 
 import DAO.AccountDAO;
 import Model.Account;
+import Util.AppConfig;
+import Util.BloomFilter;
 
 /**
  * Service class for handling business logic related to Account operations.
@@ -10,6 +12,24 @@ public class AccountService {
 
     private AccountDAO accountDAO = new AccountDAO();
 
+    /**
+     * Bloom filter of every username that is taken, built from the account table when the service starts and kept
+     * up to date by registerAccount. A username it has never seen is definitely free, so most sign-ups skip the
+     * lookup query. The unique constraint on account.username still decides races, such as an account inserted by
+     * another process after startup.
+     */
+    private BloomFilter usernameFilter;
+
+    public AccountService() {
+        if (AppConfig.getBoolean("socialmedia.accounts.bloom.enabled", true)) {
+            BloomFilter filter = new BloomFilter(
+                    AppConfig.getLong("socialmedia.accounts.bloom.expectedInsertions", 1000000), 0.01);
+            if (accountDAO.forEachUsername(filter::put) >= 0) {
+                usernameFilter = filter;
+            }
+        }
+    }
+
     /**
      * Validates whether an account object contains a non-blank username
      * and a password with at least 4 characters.
@@ -29,6 +49,9 @@ public class AccountService {
      * @return true if username is taken, false otherwise
      */
     public boolean isUsernameTaken(String username) {
+        if (usernameFilter != null && !usernameFilter.mightContain(username)) {
+            return false;
+        }
         return accountDAO.usernameExists(username);
     }
 
@@ -39,7 +62,16 @@ public class AccountService {
      * @return the registered Account with generated ID, or null if registration fails
      */
     public Account registerAccount(Account account) {
-        return accountDAO.insertAccount(account);
+        Account registered = accountDAO.insertAccount(account);
+        if (usernameFilter != null) {
+            if (registered != null) {
+                usernameFilter.put(registered.getUsername());
+            } else if (accountDAO.usernameExists(account.getUsername())) {
+                // lost a race with another registration, or the row was inserted outside this service
+                usernameFilter.put(account.getUsername());
+            }
+        }
+        return registered;
     }
 
     /**
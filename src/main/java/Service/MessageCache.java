@@ -0,0 +1,209 @@
+package Service;
+
+import Model.Message;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, in-process LRU cache of messages keyed by message_id, with a time-to-live on every entry.
+ *
+ * The cache is split into segments by message_id, each an access-order map with its own lock and an equal share of
+ * maxSize, so hits on different messages rarely wait for each other. Eviction is least recently used within a
+ * segment, which approximates LRU over the whole cache; a cache too small to split into segments of a useful size
+ * keeps one segment and is exactly LRU.
+ *
+ * To keep reads from going stale, every invalidation bumps a generation counter. A caller that misses takes the
+ * generation with {@link #generation()} before reading the database and passes it to {@link #putIfUnchanged}; if
+ * the message was changed in the meantime the stale row is simply not cached.
+ */
+public class MessageCache {
+
+    private static final int MAX_SEGMENTS = 64;
+
+    /**
+     * The fewest entries a segment is given; below this, LRU within a segment is too coarse to be worth the split.
+     */
+    private static final int MIN_SEGMENT_SIZE = 64;
+
+    private final long ttlNanos;
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize the maximum number of messages held; 0 turns the cache off
+     * @param ttlMillis how long an entry may be served before it is reloaded
+     */
+    public MessageCache(int maxSize, long ttlMillis) {
+        maxSize = Math.max(maxSize, 0);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(Math.max(maxSize / MIN_SEGMENT_SIZE, 1)));
+        this.segments = new Segment[count];
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maxSize / count + (i < maxSize % count ? 1 : 0));
+        }
+    }
+
+    private Segment segmentFor(int messageId) {
+        if (segments.length == 1) {
+            return segments[0];
+        }
+        // IDs from a sharded store step by the shard count, so mix the bits before taking the top ones
+        return segments[(messageId * 0x9E3779B9) >>> segmentShift];
+    }
+
+    /**
+     * @param messageId the ID of the message
+     * @return the cached message, or null if it is not cached or has expired
+     */
+    public Message get(int messageId) {
+        Segment segment = segmentFor(messageId);
+        CachedMessage cached;
+        synchronized (segment) {
+            cached = segment.get(messageId);
+            if (cached != null && System.nanoTime() - cached.cachedAtNanos > ttlNanos) {
+                segment.remove(messageId);
+                evictions.increment();
+                cached = null;
+            }
+        }
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return cached.message;
+    }
+
+    /**
+     * @return the current generation, to be passed to {@link #putIfUnchanged} after loading a message
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Caches a message loaded from the database, unless something was invalidated since the load started.
+     *
+     * @param message the loaded message
+     * @param loadGeneration the value of {@link #generation()} taken before the load
+     */
+    public void putIfUnchanged(Message message, long loadGeneration) {
+        Segment segment = segmentFor(message.getMessage_id());
+        if (segment.maxSize == 0) {
+            return;
+        }
+        // invalidate bumps the generation before it takes the segment lock, so a put that still sees the old
+        // generation here is always followed by that invalidation's remove
+        synchronized (segment) {
+            if (generation.get() == loadGeneration) {
+                segment.put(message.getMessage_id(), new CachedMessage(message, System.nanoTime()));
+            }
+        }
+    }
+
+    /**
+     * Drops a message from the cache. Must be called after every change to the message row.
+     *
+     * @param messageId the ID of the changed message
+     */
+    public void invalidate(int messageId) {
+        generation.incrementAndGet();
+        Segment segment = segmentFor(messageId);
+        synchronized (segment) {
+            segment.remove(messageId);
+        }
+    }
+
+    /**
+     * Drops every cached message.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * One segment: an access-order map that drops its least recently used entry once it holds more than maxSize.
+     * Guarded by its own monitor.
+     */
+    private class Segment {
+        private final int maxSize;
+        private final LinkedHashMap<Integer, CachedMessage> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        private Segment(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        private CachedMessage get(int messageId) {
+            return entries.get(messageId);
+        }
+
+        private void put(int messageId, CachedMessage cached) {
+            entries.put(messageId, cached);
+            if (entries.size() > maxSize) {
+                Iterator<CachedMessage> eldest = entries.values().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        private void remove(int messageId) {
+            entries.remove(messageId);
+        }
+
+        private void clear() {
+            entries.clear();
+        }
+
+        private int size() {
+            return entries.size();
+        }
+    }
+
+    private static class CachedMessage {
+        private final Message message;
+        private final long cachedAtNanos;
+
+        private CachedMessage(Message message, long cachedAtNanos) {
+            this.message = message;
+            this.cachedAtNanos = cachedAtNanos;
+        }
+    }
+}
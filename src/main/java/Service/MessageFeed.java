@@ -0,0 +1,257 @@
+package Service;
+
+import Model.Message;
+import Model.MessageEvent;
+import Util.AppConfig;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.eclipse.jetty.util.VirtualThreads;
+
+/**
+ * A publish/subscribe feed of message changes. MessageService publishes an event after every committed create,
+ * update and delete; subscribers receive the events they are interested in through a sink, such as a Server-Sent
+ * Events connection.
+ *
+ * Publishing never blocks and never waits for a subscriber. Every subscriber has its own bounded buffer: publish()
+ * only offers the event to each buffer, and a shared, bounded pool of delivery threads drains each buffer into its
+ * sink, one event at a time and in order. A subscriber that falls so far behind that its buffer overflows is dropped
+ * and disconnected, so one slow client can never hold up the others or grow memory without limit. The disconnect
+ * runs on the heartbeat thread rather than the delivery pool, so it still happens when every delivery thread is
+ * blocked writing to a slow client, and closing the connection is what unblocks them.
+ */
+public class MessageFeed {
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ThreadFactory threadFactory = runnable -> {
+        Thread thread = new Thread(runnable, "message-feed-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    };
+    private static final Executor delivery = createDeliveryExecutor();
+    private static final ScheduledExecutorService heartbeats =
+            Executors.newSingleThreadScheduledExecutor(threadFactory);
+
+    private final int bufferSize;
+    private final long heartbeatMillis;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private ScheduledFuture<?> heartbeat;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param bufferSize the number of undelivered events a subscriber may have before it is dropped
+     * @param heartbeatMillis how often idle subscribers are sent a heartbeat; 0 turns heartbeats off
+     */
+    public MessageFeed(int bufferSize, long heartbeatMillis) {
+        this.bufferSize = Math.max(bufferSize, 1);
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    /**
+     * Builds the pool that runs sinks. When socialmedia.server.threads is "virtual" and the JDK has virtual threads,
+     * sinks run on virtual threads like the request handlers, and a sink blocked on a slow client holds no platform
+     * thread. Otherwise at most socialmedia.feed.threads platform threads run sinks at once. Its queue needs no bound
+     * of its own: a subscription has at most one drain task queued or running, so the queue never holds more tasks
+     * than there are subscribers.
+     */
+    private static Executor createDeliveryExecutor() {
+        if ("virtual".equalsIgnoreCase(AppConfig.getString("socialmedia.server.threads", "default"))
+                && VirtualThreads.areSupported()) {
+            return VirtualThreads::executeOnVirtualThread;
+        }
+        int threads = Math.max(AppConfig.getInt("socialmedia.feed.threads", 16), 1);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * @param postedBy only receive events for messages posted by this account, or null for all messages
+     * @param sink called on a delivery thread for every event, never concurrently for the same subscription; an
+     *             exception from it ends the subscription
+     * @param onDrop called once if the subscription is dropped for falling behind or because the sink failed, so
+     *               the caller can disconnect the client
+     * @return the subscription, to be closed when the client goes away
+     */
+    public Subscription subscribe(Integer postedBy, Consumer<MessageEvent> sink, Runnable onDrop) {
+        Subscription subscription = new Subscription(postedBy, sink, onDrop);
+        subscriptions.add(subscription);
+        synchronized (this) {
+            if (heartbeat == null && heartbeatMillis > 0) {
+                heartbeat = heartbeats.scheduleAtFixedRate(this::sendHeartbeats, heartbeatMillis, heartbeatMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+        return subscription;
+    }
+
+    /**
+     * Hands an event to every interested subscriber without waiting for any of them.
+     *
+     * @param type MessageEvent.CREATED, UPDATED or DELETED
+     * @param message the message after the change, or as it was before a delete
+     */
+    public void publish(String type, Message message) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        MessageEvent event = new MessageEvent(sequence.incrementAndGet(), type, message);
+        published.increment();
+        for (Subscription subscription : subscriptions) {
+            if (subscription.postedBy == null || subscription.postedBy == message.getPosted_by()) {
+                subscription.offer(event);
+            }
+        }
+    }
+
+    private void sendHeartbeats() {
+        MessageEvent event = new MessageEvent(sequence.get(), MessageEvent.HEARTBEAT, null);
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    private void removed(Subscription subscription) {
+        subscriptions.remove(subscription);
+        synchronized (this) {
+            if (subscriptions.isEmpty() && heartbeat != null) {
+                heartbeat.cancel(false);
+                heartbeat = null;
+            }
+        }
+    }
+
+    /**
+     * @return the number of open subscriptions
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * @return the number of events published while at least one client was subscribed
+     */
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    /**
+     * @return the number of events handed to sinks, counted once per subscriber
+     */
+    public long getDeliveredCount() {
+        return delivered.sum();
+    }
+
+    /**
+     * @return the number of subscriptions dropped for falling behind or failing
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * One subscriber, with its filter, its buffer and the flag that makes sure only one delivery thread drains it.
+     */
+    public class Subscription implements AutoCloseable {
+        private final Integer postedBy;
+        private final Consumer<MessageEvent> sink;
+        private final Runnable onDrop;
+        private final ArrayBlockingQueue<MessageEvent> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Subscription(Integer postedBy, Consumer<MessageEvent> sink, Runnable onDrop) {
+            this.postedBy = postedBy;
+            this.sink = sink;
+            this.onDrop = onDrop;
+        }
+
+        private void offer(MessageEvent event) {
+            if (closed.get()) {
+                return;
+            }
+            if (!buffer.offer(event)) {
+                drop();
+                return;
+            }
+            if (draining.compareAndSet(false, true)) {
+                delivery.execute(this::drain);
+            }
+        }
+
+        /**
+         * Delivers at most one buffer's worth of events, then yields the thread to other subscribers, so a busy
+         * subscriber cannot keep a delivery thread to itself while the pool is bounded.
+         */
+        private void drain() {
+            MessageEvent event;
+            for (int turn = 0; turn < bufferSize && !closed.get() && (event = buffer.poll()) != null; turn++) {
+                try {
+                    sink.accept(event);
+                    delivered.increment();
+                } catch (RuntimeException e) {
+                    drop();
+                }
+            }
+            if (!closed.get() && !buffer.isEmpty()) {
+                delivery.execute(this::drain);
+                return;
+            }
+            draining.set(false);
+            // an event offered after the last poll but before the flag was cleared would otherwise wait
+            if (!closed.get() && !buffer.isEmpty() && draining.compareAndSet(false, true)) {
+                delivery.execute(this::drain);
+            }
+        }
+
+        private void drop() {
+            if (end()) {
+                dropped.increment();
+                heartbeats.execute(onDrop);
+            }
+        }
+
+        /**
+         * Stops delivery and discards any undelivered events. Safe to call more than once.
+         */
+        @Override
+        public void close() {
+            end();
+        }
+
+        private boolean end() {
+            if (!closed.compareAndSet(false, true)) {
+                return false;
+            }
+            buffer.clear();
+            removed(this);
+            return true;
+        }
+
+        /**
+         * @return the number of events waiting to be delivered
+         */
+        public int getBacklog() {
+            return buffer.size();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package Service;
+
+import Model.Message;
+import Util.IntHashMap;
+import Util.Postings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory inverted index over message_text. Every token maps to a postings list: a sorted array of primitive
+ * int message_ids, so a query touches only the postings of its own tokens and never the message table. Results
+ * come newest first, read from the high end of the postings, so a query stops as soon as it has limit matches.
+ *
+ * Text is split into tokens at every character that is not a letter or digit and lower-cased, so "Hello, World!"
+ * indexes as "hello" and "world". A query is a list of terms that must all match, and "OR" (in capitals) separates
+ * alternatives: "cats dogs OR birds" finds messages with both cats and dogs, or with birds.
+ *
+ * The index is kept up to date by MessageService after every committed change. Reads share a read lock and run
+ * concurrently; changes take the write lock briefly.
+ */
+public class MessageSearchIndex {
+
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final IntHashMap<String[]> indexedTokens = new IntHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds a message, replacing what was indexed for its message_id before.
+     *
+     * @param message the created or updated message
+     */
+    public void put(Message message) {
+        String[] tokens = tokenize(message.getMessage_text()).toArray(new String[0]);
+        int messageId = message.getMessage_id();
+        lock.writeLock().lock();
+        try {
+            String[] previous = indexedTokens.put(messageId, tokens);
+            if (previous != null) {
+                removePostings(messageId, previous);
+            }
+            for (String token : tokens) {
+                postings.computeIfAbsent(token, t -> new Postings()).add(messageId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param messageId the ID of a deleted message
+     */
+    public void remove(int messageId) {
+        lock.writeLock().lock();
+        try {
+            String[] previous = indexedTokens.remove(messageId);
+            if (previous != null) {
+                removePostings(messageId, previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removePostings(int messageId, String[] tokens) {
+        for (String token : tokens) {
+            Postings list = postings.get(token);
+            if (list != null && list.remove(messageId) && list.size() == 0) {
+                postings.remove(token);
+            }
+        }
+    }
+
+    /**
+     * @param query terms separated by spaces, with OR between alternatives
+     * @param limit the maximum number of IDs to return
+     * @return the IDs of the newest matching messages in descending order, at most limit of them
+     */
+    public int[] search(String query, int limit) {
+        return search(query, limit, Long.MAX_VALUE);
+    }
+
+    /**
+     * Continues a search below the last ID a previous call returned, eg to replace results that turned out not to
+     * match any more.
+     *
+     * @param query terms separated by spaces, with OR between alternatives
+     * @param limit the maximum number of IDs to return
+     * @param before only IDs below this are returned
+     * @return the IDs of the newest matching messages below before, in descending order, at most limit of them
+     */
+    public int[] search(String query, int limit, long before) {
+        List<List<String>> alternatives = parse(query);
+        int[] result = new int[0];
+        lock.readLock().lock();
+        try {
+            for (List<String> terms : alternatives) {
+                result = union(result, intersect(terms, limit, before), limit);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * @param query a query as accepted by {@link #search}
+     * @param message a message
+     * @return true if the message text matches the query, checked without the index
+     */
+    public static boolean matches(String query, Message message) {
+        Set<String> tokens = tokenize(message.getMessage_text());
+        for (List<String> terms : parse(query)) {
+            if (tokens.containsAll(terms)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param query a search query
+     * @return true if the query has at least one term
+     */
+    public static boolean isValidQuery(String query) {
+        return query != null && !parse(query).isEmpty();
+    }
+
+    /**
+     * @return the number of indexed messages
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return indexedTokens.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of distinct tokens
+     */
+    public int getTokenCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static List<List<String>> parse(String query) {
+        List<List<String>> alternatives = new ArrayList<>();
+        List<String> terms = new ArrayList<>();
+        for (String word : query.trim().split("\\s+")) {
+            if (word.equals("OR")) {
+                if (!terms.isEmpty()) {
+                    alternatives.add(terms);
+                }
+                terms = new ArrayList<>();
+            } else {
+                terms.addAll(tokenize(word));
+            }
+        }
+        if (!terms.isEmpty()) {
+            alternatives.add(terms);
+        }
+        return alternatives;
+    }
+
+    /**
+     * @param text the text to split
+     * @return the distinct lower-case tokens of the text, in order of first appearance
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Intersects the postings of all terms, walking the shortest list down from before and probing the others, so
+     * the work is bounded by that list and stops at limit matches.
+     *
+     * @return up to limit IDs in descending order
+     */
+    private int[] intersect(List<String> terms, int limit, long before) {
+        Postings[] lists = new Postings[terms.size()];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(terms.get(i));
+            if (lists[i] == null) {
+                return new int[0];
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+        Postings shortest = lists[0];
+        int[] result = new int[Math.min(limit, shortest.size())];
+        int length = 0;
+        int end = before > Integer.MAX_VALUE ? shortest.size() : shortest.indexOf((int) before);
+        candidates:
+        for (int i = end - 1; i >= 0 && length < result.length; i--) {
+            int id = shortest.get(i);
+            for (int j = 1; j < lists.length; j++) {
+                if (!lists[j].contains(id)) {
+                    continue candidates;
+                }
+            }
+            result[length++] = id;
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    /**
+     * @param a IDs in descending order
+     * @param b IDs in descending order
+     * @return the first limit IDs of both, in descending order, without duplicates
+     */
+    private static int[] union(int[] a, int[] b, int limit) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        int[] result = new int[Math.min(a.length + b.length, limit)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (n < result.length && (i < a.length || j < b.length)) {
+            if (j == b.length || i < a.length && a[i] > b[j]) {
+                result[n++] = a[i++];
+            } else if (i == a.length || a[i] < b[j]) {
+                result[n++] = b[j++];
+            } else {
+                result[n++] = a[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+}
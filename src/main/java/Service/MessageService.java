@@ -1,16 +1,156 @@
 package Service;
 
+import DAO.AccountDAO;
+import DAO.InMemoryMessageStore;
+import DAO.LogMessageStore;
 import DAO.MessageDAO;
+import DAO.MessageStore;
+import DAO.ShardedMessageDAO;
+import Model.AccountStats;
+import Model.BatchResult;
 import Model.Message;
+import Model.MessageEvent;
+import Model.MessagePage;
+import Util.AppConfig;
+import Util.ConnectionUtil;
+import Util.PageCursor;
 
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
 
 /**
  * Service class for handling business logic related to Message operations.
  */
 public class MessageService {
 
-    private MessageDAO messageDAO = new MessageDAO();
+    /**
+     * The largest page a client may ask for with ?limit=.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * The largest number of messages accepted by a single createMessages call.
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    /**
+     * A plain MessageDAO, a ShardedMessageDAO when socialmedia.db.shards is above 1, or an InMemoryMessageStore or
+     * LogMessageStore when socialmedia.messages.store is memory or log.
+     */
+    private MessageStore messageStore = createMessageStore();
+
+    /**
+     * Read-through cache in front of getMessageById. Every method that changes a message row invalidates it.
+     */
+    private MessageCache messageCache = new MessageCache(
+            AppConfig.getInt("socialmedia.cache.maxSize", 10000),
+            AppConfig.getLong("socialmedia.cache.ttlMillis", 60000));
+
+    /**
+     * Version counters behind the ETags of message reads. Every method that changes a message row bumps them once
+     * the change has committed.
+     */
+    private MessageVersions messageVersions = new MessageVersions(
+            AppConfig.getInt("socialmedia.etag.slots", 65536));
+
+    /**
+     * Inverted index behind searchMessages, or null unless socialmedia.search.enabled (the default).
+     */
+    private MessageSearchIndex searchIndex;
+
+    /**
+     * Locks that order the search index changes for one message, picked by message_id. See reindex.
+     */
+    private final Object[] indexStripes = new Object[64];
+
+    /**
+     * Per-account counters behind getAccountStats, rebuilt from the message table at startup.
+     */
+    private MessageStatistics statistics = new MessageStatistics(messageStore);
+
+    /**
+     * Live feed of committed changes, for clients that would otherwise poll.
+     */
+    private MessageFeed messageFeed = new MessageFeed(
+            AppConfig.getInt("socialmedia.feed.bufferSize", 256),
+            AppConfig.getLong("socialmedia.feed.heartbeatMillis", 15000));
+
+    /**
+     * Group-committing writer used by createMessageAsync, or null unless socialmedia.messages.writeMode=async.
+     */
+    private MessageWriteBehind writeBehind;
+
+    /**
+     * socialmedia.messages.store picks the engine: h2 (the default), memory or log.
+     *
+     * The log store keeps its segments in socialmedia.log.dir (default ./h2/messages-log), each
+     * socialmedia.log.segmentBytes long (default 16 MB), copies the message table the first time, and compacts
+     * segments that are at least socialmedia.log.compactPercent garbage (default 50) every
+     * socialmedia.log.compactMillis (default 60000). socialmedia.log.syncWrites forces every change to disk.
+     *
+     * The in-memory store restores from socialmedia.store.snapshotPath (default ./h2/messages.snapshot), or copies
+     * the message table if there is no snapshot yet, and snapshots every socialmedia.store.snapshotMillis (default
+     * 30000, 0 for never). A snapshot that exists but cannot be read fails startup instead of falling back to the
+     * table, which may be older than the snapshot.
+     */
+    private static MessageStore createMessageStore() {
+        String engine = AppConfig.getString("socialmedia.messages.store", "h2");
+        if ("log".equalsIgnoreCase(engine)) {
+            AccountDAO accountDAO = new AccountDAO();
+            LogMessageStore store = new LogMessageStore(
+                    Paths.get(AppConfig.getString("socialmedia.log.dir", "./h2/messages-log")),
+                    AppConfig.getInt("socialmedia.log.segmentBytes", 16 * 1024 * 1024),
+                    AppConfig.getBoolean("socialmedia.log.syncWrites", false), accountDAO::accountExists);
+            if (!store.isRecovered()) {
+                new MessageDAO().forEachMessage(null, store::load);
+            }
+            store.startCompaction(AppConfig.getLong("socialmedia.log.compactMillis", 60000),
+                    AppConfig.getInt("socialmedia.log.compactPercent", 50) / 100.0);
+            return store;
+        }
+        if ("memory".equalsIgnoreCase(engine)) {
+            String path = AppConfig.getString("socialmedia.store.snapshotPath", "./h2/messages.snapshot");
+            AccountDAO accountDAO = new AccountDAO();
+            InMemoryMessageStore store = new InMemoryMessageStore(
+                    path.isEmpty() ? null : Paths.get(path), accountDAO::accountExists);
+            if (!store.isRestored()) {
+                new MessageDAO().forEachMessage(null, store::load);
+            }
+            store.startSnapshots(AppConfig.getLong("socialmedia.store.snapshotMillis", 30000));
+            return store;
+        }
+        List<DataSource> shards = ConnectionUtil.getShardDataSources();
+        return shards.size() > 1
+                ? new ShardedMessageDAO(shards, ConnectionUtil.getReplicaRouter()) : new MessageDAO();
+    }
+
+    public MessageService() {
+        for (int i = 0; i < indexStripes.length; i++) {
+            indexStripes[i] = new Object();
+        }
+        if (AppConfig.getBoolean("socialmedia.search.enabled", true)) {
+            searchIndex = new MessageSearchIndex();
+        }
+        // one pass over the table fills both the statistics and the search index
+        messageStore.forEachMessage(null, message -> {
+            statistics.created(message);
+            if (searchIndex != null) {
+                searchIndex.put(message);
+            }
+        });
+        if ("async".equalsIgnoreCase(AppConfig.getString("socialmedia.messages.writeMode", "sync"))) {
+            writeBehind = new MessageWriteBehind(messageStore,
+                    AppConfig.getInt("socialmedia.writeBehind.capacity", 10000),
+                    AppConfig.getInt("socialmedia.writeBehind.maxBatchSize", 256),
+                    AppConfig.getLong("socialmedia.writeBehind.maxDelayMillis", 2));
+        }
+    }
 
     /**
      * Creates a new message after validating its content and posted_by ID.
@@ -19,11 +159,102 @@ public class MessageService {
      * @return the created Message if valid, otherwise null
      */
     public Message createMessage(Message message) {
-        if (message.getMessage_text() == null || message.getMessage_text().isBlank()
-                || message.getMessage_text().length() > 255 || message.getPosted_by() <= 0) {
+        if (!isValidMessage(message)) {
             return null;
         }
-        return messageDAO.insertMessage(message);
+        Message created = messageStore.insertMessage(message);
+        if (created != null) {
+            onCreated(created);
+        }
+        return created;
+    }
+
+    /**
+     * @return true if new messages should go through createMessageAsync
+     */
+    public boolean isWriteBehindEnabled() {
+        return writeBehind != null;
+    }
+
+    /**
+     * @return the write-behind queue, for reading its statistics, or null if it is turned off
+     */
+    public MessageWriteBehind getWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Validates a message and queues it for a group commit instead of inserting it right away.
+     *
+     * @param message the Message to create
+     * @return a future completed with the created Message, or with null if the message is invalid or was rejected
+     *         by the database
+     * @throws java.util.concurrent.RejectedExecutionException if the write-behind queue is full
+     */
+    public CompletableFuture<Message> createMessageAsync(Message message) {
+        if (!isValidMessage(message)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (writeBehind == null) {
+            return CompletableFuture.completedFuture(createMessage(message));
+        }
+        return writeBehind.submit(message).thenApply(created -> {
+            if (created != null) {
+                onCreated(created);
+            }
+            return created;
+        });
+    }
+
+    /**
+     * Validates a batch of messages and inserts the valid ones together in a single transaction.
+     *
+     * @param messages the messages to create, at most MAX_BATCH_SIZE
+     * @return one result per message, in request order
+     * @throws IllegalArgumentException if the batch is larger than MAX_BATCH_SIZE
+     */
+    public List<BatchResult> createMessages(List<Message> messages) {
+        if (messages.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("at most " + MAX_BATCH_SIZE + " messages per batch");
+        }
+        List<Message> valid = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        List<BatchResult> results = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (message != null && isValidMessage(message)) {
+                valid.add(message);
+                validIndexes.add(i);
+                results.add(null);
+            } else {
+                results.add(new BatchResult(i, 400, null));
+            }
+        }
+        Message[] inserted = messageStore.insertMessages(valid);
+        for (int j = 0; j < valid.size(); j++) {
+            int index = validIndexes.get(j);
+            if (inserted == null) {
+                results.set(index, new BatchResult(index, 500, null));
+            } else {
+                // a posted_by with no account is rejected with 400, as createMessage rejects it
+                results.set(index, new BatchResult(index, inserted[j] != null ? 200 : 400, inserted[j]));
+                if (inserted[j] != null) {
+                    onCreated(inserted[j]);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * A message needs non-blank text of at most 255 characters and a positive posted_by ID.
+     *
+     * @param message the Message to validate
+     * @return true if valid, false otherwise
+     */
+    public boolean isValidMessage(Message message) {
+        return message.getMessage_text() != null && !message.getMessage_text().isBlank()
+                && message.getMessage_text().length() <= 255 && message.getPosted_by() > 0;
     }
 
     /**
@@ -32,7 +263,7 @@ public class MessageService {
      * @return a list of all messages
      */
     public List<Message> getAllMessages() {
-        return messageDAO.getAllMessages();
+        return messageStore.getAllMessages();
     }
 
     /**
@@ -42,17 +273,120 @@ public class MessageService {
      * @return a list of messages from the user
      */
     public List<Message> getMessagesByUser(int userId) {
-        return messageDAO.getMessagesByUser(userId);
+        return messageStore.getMessagesByUser(userId);
+    }
+
+    /**
+     * Streams messages to a callback as they are read, without holding them all in memory.
+     *
+     * @param userId the ID of the user, or null for all messages
+     * @param action called once for every message
+     */
+    public void forEachMessage(Integer userId, Consumer<Message> action) {
+        messageStore.forEachMessage(userId, action);
     }
 
     /**
-     * Retrieves a message by its unique ID.
+     * Retrieves one page of messages, optionally limited to a single user.
+     *
+     * @param postedBy the ID of the user, or null for all messages
+     * @param cursor the next_cursor of the previous page, or null for the first page
+     * @param limit the page size, between 1 and MAX_PAGE_SIZE
+     * @return the page, with a next_cursor if more messages follow
+     * @throws IllegalArgumentException if the cursor or limit is invalid
+     */
+    public MessagePage getMessagesPage(Integer postedBy, String cursor, int limit) {
+        return getMessagesPage(postedBy, cursor, limit, null, null);
+    }
+
+    /**
+     * Retrieves one page of the messages posted in a time range. since moves the start of the first page forward
+     * to the first message at or after it, and until ends the last page at the first message at or after it.
+     *
+     * @param postedBy the ID of the user whose messages to list, or null for all messages
+     * @param cursor the nextCursor of the previous page, or null for the first page
+     * @param limit the maximum number of messages on the page
+     * @param since the earliest time_posted_epoch to include, or null for no lower bound
+     * @param until the time_posted_epoch to stop before, or null for no upper bound
+     * @return the page, with a nextCursor if there may be more
+     * @throws IllegalArgumentException if the limit is out of range or the cursor is malformed
+     */
+    public MessagePage getMessagesPage(Integer postedBy, String cursor, int limit, Long since, Long until) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        PageCursor after = cursor == null || cursor.isBlank() ? null : PageCursor.decode(cursor);
+        if (since != null && since > Long.MIN_VALUE && (after == null || after.getTimePostedEpoch() < since)) {
+            // "after (since - 1, largest id)" is the same as "at or after since"; a cursor from before since,
+            // even one at since - 1, would let through what was posted between it and since
+            after = new PageCursor(since - 1, Integer.MAX_VALUE);
+        }
+        List<Message> messages = messageStore.getMessagesPage(postedBy, after, limit + 1);
+        String next = null;
+        if (until != null) {
+            int end = 0;
+            while (end < messages.size() && messages.get(end).getTime_posted_epoch() < until) {
+                end++;
+            }
+            messages = messages.subList(0, end);
+        }
+        if (messages.size() > limit) {
+            messages = messages.subList(0, limit);
+            Message last = messages.get(limit - 1);
+            next = new PageCursor(last.getTime_posted_epoch(), last.getMessage_id()).encode();
+        }
+        return new MessagePage(messages, next);
+    }
+
+    /**
+     * Retrieves the messages posted in a time range, through the time indexes.
+     *
+     * @param postedBy the ID of the user whose messages to list, or null for all messages
+     * @param since the earliest time_posted_epoch to include, or null for no lower bound
+     * @param until the time_posted_epoch to stop before, or null for no upper bound
+     * @return the matching messages in (time_posted_epoch, message_id) order
+     */
+    public List<Message> getMessagesByTime(Integer postedBy, Long since, Long until) {
+        long from = since == null ? Long.MIN_VALUE : since;
+        long to = until == null ? Long.MAX_VALUE : until;
+        if (from >= to) {
+            return new ArrayList<>();
+        }
+        return messageStore.getMessagesByTime(postedBy, from, to);
+    }
+
+    /**
+     * Retrieves a message by its unique ID, from the cache when possible.
      *
      * @param messageId the ID of the message
      * @return the Message if found, otherwise null
      */
     public Message getMessageById(int messageId) {
-        return messageDAO.getMessageById(messageId);
+        Message cached = messageCache.get(messageId);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = messageCache.generation();
+        // a row from a lagging replica could outlive the change that made it stale, so fill only from fresh data
+        Message message = ConnectionUtil.readLatest(() -> messageStore.getMessageById(messageId));
+        if (message != null) {
+            messageCache.putIfUnchanged(message, generation);
+        }
+        return message;
+    }
+
+    /**
+     * @return the cache in front of getMessageById, for reading its statistics
+     */
+    public MessageCache getMessageCache() {
+        return messageCache;
+    }
+
+    /**
+     * @return the version counters behind the ETags of message reads
+     */
+    public MessageVersions getMessageVersions() {
+        return messageVersions;
     }
 
     /**
@@ -66,16 +400,164 @@ public class MessageService {
         if (newText == null || newText.isBlank() || newText.length() > 255) {
             return null;
         }
-        return messageDAO.updateMessage(messageId, newText);
+        Message previous = messageStore.updateMessage(messageId, newText);
+        messageCache.invalidate(messageId);
+        if (previous == null) {
+            return null;
+        }
+        Message updated = new Message(messageId, previous.getPosted_by(), newText, previous.getTime_posted_epoch());
+        onUpdated(previous, updated);
+        return updated;
     }
 
     /**
      * Deletes a message by its ID.
      *
      * @param messageId the ID of the message to delete
-     * @return true if the message was successfully deleted, false otherwise
+     * @return the deleted Message, or null if there was no message with that ID
+     */
+    public Message deleteMessage(int messageId) {
+        Message deleted = messageStore.deleteMessage(messageId);
+        messageCache.invalidate(messageId);
+        if (deleted != null) {
+            onDeleted(deleted);
+        }
+        return deleted;
+    }
+
+    /**
+     * Finds the newest messages whose text contains the query terms, using the inverted index. Rows changed
+     * between the index lookup and the read are checked against the query again, so the result never includes a
+     * message that no longer matches; the ones dropped that way are made up from further down the index, so a
+     * short result always means there are no more matches.
+     *
+     * @param query terms that must all appear, with OR between alternatives
+     * @param limit the maximum number of messages, between 1 and MAX_PAGE_SIZE
+     * @return the matching messages, newest (highest message_id) first
+     * @throws IllegalArgumentException if the query has no terms or the limit is invalid
+     */
+    public List<Message> searchMessages(String query, int limit) {
+        if (!MessageSearchIndex.isValidQuery(query)) {
+            throw new IllegalArgumentException("query has no search terms");
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        List<Message> matches = new ArrayList<>();
+        if (searchIndex == null) {
+            // the stream runs oldest first, so keep the last limit matches and turn them around
+            ArrayDeque<Message> newest = new ArrayDeque<>(limit);
+            messageStore.forEachMessage(null, message -> {
+                if (MessageSearchIndex.matches(query, message)) {
+                    if (newest.size() == limit) {
+                        newest.removeFirst();
+                    }
+                    newest.addLast(message);
+                }
+            });
+            newest.descendingIterator().forEachRemaining(matches::add);
+            return matches;
+        }
+        long before = Long.MAX_VALUE;
+        while (matches.size() < limit) {
+            int[] ids = searchIndex.search(query, limit - matches.size(), before);
+            if (ids.length == 0) {
+                break;
+            }
+            List<Message> found = messageStore.getMessagesByIds(ids);
+            for (int i = found.size() - 1; i >= 0; i--) {
+                if (MessageSearchIndex.matches(query, found.get(i))) {
+                    matches.add(found.get(i));
+                }
+            }
+            before = ids[ids.length - 1];
+        }
+        return matches;
+    }
+
+    /**
+     * @return the search index, for reading its size, or null if search runs without one
+     */
+    public MessageSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * @param accountId the ID of the account
+     * @return the account's message count, first and last post time and average message length, read from
+     *         counters kept in memory rather than from the message table
+     */
+    public AccountStats getAccountStats(int accountId) {
+        return statistics.get(accountId);
+    }
+
+    /**
+     * @return the per-account message counters
      */
-    public boolean deleteMessage(int messageId) {
-        return messageDAO.deleteMessage(messageId);
+    public MessageStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return the live feed of message changes
+     */
+    public MessageFeed getMessageFeed() {
+        return messageFeed;
+    }
+
+    /**
+     * Brings the in-process views of the message table up to date once a new message has committed, then tells
+     * feed subscribers. The version bump comes after the index, so a client that sees the new ETag also finds the
+     * new message in search.
+     */
+    private void onCreated(Message created) {
+        if (searchIndex != null) {
+            searchIndex.put(created);
+        }
+        statistics.created(created);
+        messageVersions.changed(created.getMessage_id());
+        messageFeed.publish(MessageEvent.CREATED, created);
+    }
+
+    /**
+     * Same as onCreated, for a committed update. The cache is invalidated by updateMessage itself.
+     */
+    private void onUpdated(Message previous, Message updated) {
+        if (searchIndex != null) {
+            reindex(updated.getMessage_id());
+        }
+        statistics.updated(previous, updated);
+        messageVersions.changed(updated.getMessage_id());
+        messageFeed.publish(MessageEvent.UPDATED, updated);
+    }
+
+    /**
+     * Same as onCreated, for a committed delete. The cache is invalidated by deleteMessage itself.
+     */
+    private void onDeleted(Message deleted) {
+        if (searchIndex != null) {
+            synchronized (indexStripes[deleted.getMessage_id() & (indexStripes.length - 1)]) {
+                searchIndex.remove(deleted.getMessage_id());
+            }
+        }
+        statistics.deleted(deleted);
+        messageVersions.changed(deleted.getMessage_id());
+        messageFeed.publish(MessageEvent.DELETED, deleted);
+    }
+
+    /**
+     * Indexes a message as its row stands now. Two updates of the same message can commit in one order and get
+     * here in the other, so the index is filled from a fresh read rather than from the caller's copy; holding the
+     * message's stripe while reading and indexing makes the last refresh the one that sees the last commit.
+     */
+    private void reindex(int messageId) {
+        synchronized (indexStripes[messageId & (indexStripes.length - 1)]) {
+            Message current = ConnectionUtil.readLatest(() -> messageStore.getMessageById(messageId));
+            if (current == null) {
+                searchIndex.remove(messageId);
+            } else {
+                searchIndex.put(current);
+            }
+        }
     }
 }
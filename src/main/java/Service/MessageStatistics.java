@@ -0,0 +1,142 @@
+package Service;
+
+import DAO.MessageStore;
+import Model.AccountStats;
+import Model.Message;
+import Util.ConnectionUtil;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-account message counters behind GET /accounts/{user_id}/stats, kept up to date by MessageService as changes
+ * commit so that reading them never touches the message table.
+ *
+ * Every account gets its own set of striped counters (LongAdder and LongAccumulator), so writers posting for
+ * different accounts share nothing, and writers for the same account add to separate cells instead of fighting
+ * over one. Counts and length totals commute, so hooks for different messages may run in any order. The earliest
+ * and latest post times are one immutable pair, widened by compare-and-set on create. When a delete removes the
+ * message that held one of them, the new pair is read from the two ends of the account's time index and swapped in
+ * whole, so a reader sees either the old pair or the new one, never a half-reset state.
+ *
+ * Like MessageVersions, the counters only see changes made through this process.
+ */
+public class MessageStatistics {
+
+    /**
+     * The earliest and latest time_posted_epoch of an account, or EMPTY if it has no messages.
+     */
+    private static final class TimeRange {
+        static final TimeRange EMPTY = new TimeRange(Long.MAX_VALUE, Long.MIN_VALUE);
+
+        final long first;
+        final long last;
+
+        TimeRange(long first, long last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        boolean isEmpty() {
+            return first > last;
+        }
+    }
+
+    private static final class UserStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalLength = new LongAdder();
+        final AtomicReference<TimeRange> range = new AtomicReference<>(TimeRange.EMPTY);
+    }
+
+    private final ConcurrentHashMap<Integer, UserStats> users = new ConcurrentHashMap<>();
+    private final MessageStore messageStore;
+
+    /**
+     * @param messageStore where the new first and last messages of an account are read from after one of them is
+     *                     deleted
+     */
+    public MessageStatistics(MessageStore messageStore) {
+        this.messageStore = messageStore;
+    }
+
+    /**
+     * Counts a message that has committed, or one found while rebuilding at startup.
+     */
+    public void created(Message message) {
+        UserStats stats = users.computeIfAbsent(message.getPosted_by(), id -> new UserStats());
+        stats.count.increment();
+        stats.totalLength.add(message.getMessage_text().length());
+        long time = message.getTime_posted_epoch();
+        TimeRange range;
+        do {
+            range = stats.range.get();
+            if (time >= range.first && time <= range.last) {
+                return;
+            }
+        } while (!stats.range.compareAndSet(range,
+                new TimeRange(Math.min(range.first, time), Math.max(range.last, time))));
+    }
+
+    /**
+     * Accounts for a committed change of text. Only the length total moves.
+     */
+    public void updated(Message previous, Message updated) {
+        UserStats stats = users.computeIfAbsent(updated.getPosted_by(), id -> new UserStats());
+        stats.totalLength.add(updated.getMessage_text().length() - previous.getMessage_text().length());
+    }
+
+    /**
+     * Uncounts a message whose delete has committed. Only a delete of the account's first or last message touches
+     * the store, and then only for two index seeks.
+     *
+     * Deletes of one account recompute under its lock, so the check that a deleted message was at an edge always
+     * sees the pair published by the delete before it. A create that widens the pair between the read and the swap
+     * makes the swap fail; the read is then repeated, and includes that create, which committed before its hook.
+     */
+    public void deleted(Message message) {
+        int postedBy = message.getPosted_by();
+        UserStats stats = users.computeIfAbsent(postedBy, id -> new UserStats());
+        stats.count.decrement();
+        stats.totalLength.add(-message.getMessage_text().length());
+        long time = message.getTime_posted_epoch();
+        synchronized (stats) {
+            TimeRange seen = stats.range.get();
+            if (time > seen.first && time < seen.last) {
+                return;
+            }
+            TimeRange fresh;
+            do {
+                seen = stats.range.get();
+                Message first = ConnectionUtil.readLatest(() -> messageStore.getFirstMessage(postedBy));
+                Message last = ConnectionUtil.readLatest(() -> messageStore.getLastMessage(postedBy));
+                fresh = first == null || last == null ? TimeRange.EMPTY
+                        : new TimeRange(first.getTime_posted_epoch(), last.getTime_posted_epoch());
+            } while (!stats.range.compareAndSet(seen, fresh));
+        }
+    }
+
+    /**
+     * @param accountId the ID of the account
+     * @return the account's statistics; zero messages if it has none, or does not exist
+     */
+    public AccountStats get(int accountId) {
+        UserStats stats = users.get(accountId);
+        long count = stats == null ? 0 : stats.count.sum();
+        if (count <= 0) {
+            return new AccountStats(accountId, 0, null, null, 0);
+        }
+        TimeRange range = stats.range.get();
+        return new AccountStats(accountId, count,
+                range.isEmpty() ? null : range.first,
+                range.isEmpty() ? null : range.last,
+                (double) stats.totalLength.sum() / count);
+    }
+
+    /**
+     * @return the number of accounts with counters
+     */
+    public int size() {
+        return users.size();
+    }
+}
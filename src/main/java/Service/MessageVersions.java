@@ -0,0 +1,69 @@
+package Service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cheap version counters for the message table, used to build weak ETags without touching the database.
+ *
+ * The table version goes up by one after every committed change to any message. Each message also has a version
+ * stamp: the table version of its last change. Stamps live in a fixed array of slots indexed by message_id, so two
+ * messages that share a slot also share a stamp; a change to one then changes the ETag of the other too, which costs
+ * a needless 200 now and then but never a wrong 304.
+ *
+ * Versions only cover changes made through this process. Every instance starts from a random epoch that is part of
+ * every ETag, so tags handed out before a restart never match afterwards.
+ */
+public class MessageVersions {
+
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final AtomicLong tableVersion = new AtomicLong();
+    private final AtomicLongArray stamps;
+    private final int mask;
+
+    /**
+     * @param slots the number of per-message stamps, rounded up to a power of two
+     */
+    public MessageVersions(int slots) {
+        int size = 1;
+        while (size < slots && size < 1 << 30) {
+            size <<= 1;
+        }
+        this.stamps = new AtomicLongArray(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Records a change to a message. Must be called after the change has committed, so that a reader who sees the
+     * new version is sure to read the new row.
+     *
+     * @param messageId the ID of the created, updated or deleted message
+     */
+    public void changed(int messageId) {
+        long version = tableVersion.incrementAndGet();
+        stamps.accumulateAndGet(messageId & mask, version, Math::max);
+    }
+
+    /**
+     * @return the weak ETag for any list of messages
+     */
+    public String tableETag() {
+        return "W/\"" + epoch + "-" + tableVersion.get() + "\"";
+    }
+
+    /**
+     * @param messageId the ID of the message
+     * @return the weak ETag for a single message
+     */
+    public String messageETag(int messageId) {
+        return "W/\"" + epoch + "-" + messageId + "-" + stamps.get(messageId & mask) + "\"";
+    }
+
+    /**
+     * @return the number of changes recorded so far
+     */
+    public long getTableVersion() {
+        return tableVersion.get();
+    }
+}
@@ -0,0 +1,238 @@
+package Service;
+
+import DAO.MessageStore;
+import Model.Message;
+import Util.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An asynchronous, group-committing writer for new messages. Request threads hand validated messages to
+ * {@link #submit} and get a future back; a single writer thread drains the queue and inserts everything it finds
+ * with one {@link MessageStore#insertMessages} call, which for MessageDAO is one transaction and one JDBC batch. A group is
+ * committed as soon as it reaches maxBatchSize, or maxDelayMillis after its first message arrived, whichever comes
+ * first.
+ *
+ * The queue is a lock-free ConcurrentLinkedQueue bounded by an atomic depth counter. When it is full, submit()
+ * fails fast instead of blocking the request thread.
+ *
+ * A group whose insert fails or throws, Errors included, is counted and its futures fail; the writer carries on
+ * with the next group.
+ */
+public class MessageWriteBehind {
+
+    private final MessageStore messageStore;
+    private final int capacity;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicLong maxBatch = new AtomicLong();
+    private final AtomicLong maxDepth = new AtomicLong();
+
+    /**
+     * @param messageStore the store used for the grouped inserts
+     * @param capacity the maximum number of messages waiting to be written
+     * @param maxBatchSize the largest group committed in one transaction
+     * @param maxDelayMillis the longest a message waits for its group to fill up
+     */
+    public MessageWriteBehind(MessageStore messageStore, int capacity, int maxBatchSize, long maxDelayMillis) {
+        this.messageStore = messageStore;
+        this.capacity = capacity;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.writer = new Thread(this::run, "message-write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a message for insertion.
+     *
+     * @param message an already validated message
+     * @return a future completed with the inserted Message once its group commits, with null if the insert was
+     *         rejected (for example because posted_by has no account), or exceptionally if the commit failed
+     * @throws RejectedExecutionException if the queue is full or the writer has been shut down
+     */
+    public CompletableFuture<Message> submit(Message message) {
+        if (!running) {
+            throw new RejectedExecutionException("write-behind queue is shut down");
+        }
+        int newDepth = depth.incrementAndGet();
+        if (newDepth > capacity) {
+            depth.decrementAndGet();
+            rejected.increment();
+            throw new RejectedExecutionException("write-behind queue is full (" + capacity + ")");
+        }
+        if (newDepth > maxDepth.get()) {
+            maxDepth.accumulateAndGet(newDepth, Math::max);
+        }
+        Pending pending = new Pending(message);
+        queue.offer(pending);
+        // shutdown() may have come in since the check above, and the writer may already have seen an empty queue
+        // and exited; if it has not taken this message, nobody will
+        if (!running && queue.remove(pending)) {
+            depth.decrementAndGet();
+            throw new RejectedExecutionException("write-behind queue is shut down");
+        }
+        LockSupport.unpark(writer);
+        return pending.future;
+    }
+
+    private void run() {
+        List<Pending> group = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            Pending first = queue.poll();
+            if (first == null) {
+                // submit() unparks us, so this only bounds how long an idle writer sleeps
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                continue;
+            }
+            group.add(first);
+            long deadline = first.enqueuedNanos + maxDelayNanos;
+            while (group.size() < maxBatchSize) {
+                Pending next = queue.poll();
+                if (next != null) {
+                    group.add(next);
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !running) {
+                    break;
+                }
+                LockSupport.parkNanos(this, Math.min(remaining, TimeUnit.MICROSECONDS.toNanos(200)));
+            }
+            commit(group);
+            group.clear();
+        }
+    }
+
+    private void commit(List<Pending> group) {
+        depth.addAndGet(-group.size());
+        List<Message> messages = new ArrayList<>(group.size());
+        for (Pending pending : group) {
+            messages.add(pending.message);
+        }
+        Message[] inserted = null;
+        Throwable failure = null;
+        try {
+            inserted = messageStore.insertMessages(messages);
+        } catch (Throwable e) {
+            // an Error too: letting it end the writer would leave every queued future waiting forever
+            e.printStackTrace();
+            failure = e;
+        }
+        if (inserted == null) {
+            failed.add(group.size());
+        }
+        batches.increment();
+        written.add(group.size());
+        maxBatch.accumulateAndGet(group.size(), Math::max);
+        for (int i = 0; i < group.size(); i++) {
+            Pending pending = group.get(i);
+            commitLatency.recordSince(pending.enqueuedNanos);
+            if (inserted == null) {
+                pending.future.completeExceptionally(new IllegalStateException("group commit failed", failure));
+            } else {
+                pending.future.complete(inserted[i]);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting messages, writes out everything already queued and waits for the writer to finish.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of messages waiting to be written
+     */
+    public int getQueueDepth() {
+        return Math.max(depth.get(), 0);
+    }
+
+    /**
+     * @return the highest queue depth seen so far
+     */
+    public long getMaxQueueDepth() {
+        return maxDepth.get();
+    }
+
+    /**
+     * @return the time from submit() to the commit of the message's group
+     */
+    public LatencyHistogram getCommitLatency() {
+        return commitLatency;
+    }
+
+    /**
+     * @return the number of group commits so far
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return the number of messages that went through a group commit
+     */
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    /**
+     * @return the largest group committed so far
+     */
+    public long getMaxBatchSize() {
+        return maxBatch.get();
+    }
+
+    /**
+     * @return the number of messages turned away because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return the number of messages whose group commit failed
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    private static class Pending {
+        private final Message message;
+        private final long enqueuedNanos = System.nanoTime();
+        private final CompletableFuture<Message> future = new CompletableFuture<>();
+
+        private Pending(Message message) {
+            this.message = message;
+        }
+    }
+}
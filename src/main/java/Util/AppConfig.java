@@ -0,0 +1,70 @@
+package Util;
+
+/**
+ * The AppConfig class centralizes the runtime switches of the application. Every setting is read first from a JVM
+ * system property (eg -Dsocialmedia.db.pool=bounded) and then from an environment variable with the same name in
+ * upper case with dots replaced by underscores (eg SOCIALMEDIA_DB_POOL). If neither is present the supplied default
+ * is used, so the application behaves exactly as before when nothing is configured.
+ */
+public class AppConfig {
+
+    private AppConfig() {
+    }
+
+    /**
+     * @param key the property name
+     * @param defaultValue the value to use when the property is not set
+     * @return the configured value, or defaultValue
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = System.getenv(key.toUpperCase().replace('.', '_'));
+        }
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    /**
+     * @param key the property name
+     * @param defaultValue the value to use when the property is not set or is not a number
+     * @return the configured value, or defaultValue
+     */
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @param key the property name
+     * @param defaultValue the value to use when the property is not set or is not a number
+     * @return the configured value, or defaultValue
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @param key the property name
+     * @param defaultValue the value to use when the property is not set
+     * @return the configured value, or defaultValue
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
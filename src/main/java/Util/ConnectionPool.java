@@ -0,0 +1,435 @@
+package Util;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * A bounded pool of physical connections in front of another DataSource. Connections handed out by the pool are
+ * thin proxies: calling close() on them returns the physical connection to the pool instead of closing it, so the
+ * DAO classes can keep their usual get-use-close pattern.
+ *
+ * The pool keeps at least minIdle connections open, never opens more than maxSize, makes callers wait at most
+ * borrowTimeoutMillis for a free connection, closes connections that sat idle longer than idleTimeoutMillis, and
+ * optionally checks every connection with isValid() before handing it out.
+ */
+public class ConnectionPool implements DataSource {
+
+    private final DataSource source;
+    private final int minIdle;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final boolean validateOnBorrow;
+
+    /**
+     * One permit per connection that may be handed out. Waiting callers queue on this semaphore.
+     */
+    private final Semaphore permits;
+    /**
+     * Idle connections, most recently returned first, so that the warmest connections are reused and the oldest
+     * ones drift to the tail where the evictor finds them.
+     */
+    private final LinkedBlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder borrowTimeouts = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LatencyHistogram borrowLatency = new LatencyHistogram();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    /**
+     * @param source the DataSource that opens physical connections
+     * @param minIdle the number of connections kept open even when idle
+     * @param maxSize the maximum number of connections open at once
+     * @param borrowTimeoutMillis how long getConnection() waits for a free connection before failing
+     * @param idleTimeoutMillis how long a connection above minIdle may sit idle before it is closed
+     * @param validateOnBorrow whether to check a connection with isValid() before handing it out
+     */
+    public ConnectionPool(DataSource source, int minIdle, int maxSize, long borrowTimeoutMillis,
+                          long idleTimeoutMillis, boolean validateOnBorrow) {
+        if (maxSize <= 0 || minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException("require 0 <= minIdle <= maxSize and maxSize > 0");
+        }
+        this.source = source;
+        this.minIdle = minIdle;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validateOnBorrow = validateOnBorrow;
+        this.permits = new Semaphore(maxSize, true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(idleTimeoutMillis / 2, 100);
+        evictor.scheduleWithFixedDelay(this::evictAndReplenish, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting up to the borrow timeout if the pool is exhausted.
+     *
+     * @return a pooled connection; closing it returns it to the pool
+     * @throws SQLException if no connection became available in time or a new one could not be opened
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                borrowTimeouts.increment();
+                throw new SQLTransientConnectionException("Timed out after " + borrowTimeoutMillis
+                        + "ms waiting for a connection (active=" + getActiveCount() + ", max=" + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            PooledEntry entry = takeIdleOrCreate();
+            active.incrementAndGet();
+            borrowLatency.recordSince(start);
+            return entry.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pool only hands out connections for its configured user");
+    }
+
+    private PooledEntry takeIdleOrCreate() throws SQLException {
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            if (!validateOnBorrow || isUsable(entry)) {
+                return entry;
+            }
+            validationFailures.increment();
+            destroy(entry);
+        }
+        return create();
+    }
+
+    private boolean isUsable(PooledEntry entry) {
+        try {
+            return !entry.physical.isClosed() && entry.physical.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledEntry create() throws SQLException {
+        Connection physical = source.getConnection();
+        PooledEntry entry;
+        try {
+            entry = new PooledEntry(physical);
+        } catch (SQLException e) {
+            physical.close();
+            throw e;
+        }
+        total.incrementAndGet();
+        created.increment();
+        return entry;
+    }
+
+    private void destroy(PooledEntry entry) {
+        total.decrementAndGet();
+        destroyed.increment();
+        try {
+            entry.physical.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    /**
+     * Called when a borrower closes its proxy. Rolls back anything uncommitted, restores auto-commit, read-only and
+     * the isolation level the connection was opened with, and puts it back on the idle deque, or discards it if it
+     * can no longer be used.
+     */
+    private void giveBack(PooledEntry entry) {
+        active.decrementAndGet();
+        try {
+            boolean reusable = !closed && !entry.physical.isClosed();
+            if (reusable) {
+                reset(entry);
+                entry.lastReturnedNanos = System.nanoTime();
+                idle.offerFirst(entry);
+            } else {
+                destroy(entry);
+            }
+        } catch (SQLException e) {
+            destroy(entry);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void reset(PooledEntry entry) throws SQLException {
+        Connection physical = entry.physical;
+        if (!physical.getAutoCommit()) {
+            physical.rollback();
+            physical.setAutoCommit(true);
+        }
+        if (physical.isReadOnly() != entry.defaultReadOnly) {
+            physical.setReadOnly(entry.defaultReadOnly);
+        }
+        if (physical.getTransactionIsolation() != entry.defaultIsolation) {
+            physical.setTransactionIsolation(entry.defaultIsolation);
+        }
+    }
+
+    /**
+     * Closes connections that have been idle for too long, oldest first, while keeping minIdle of them, then opens
+     * new connections until minIdle are available again.
+     */
+    private void evictAndReplenish() {
+        if (closed) {
+            return;
+        }
+        long now = System.nanoTime();
+        long idleLimit = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        Iterator<PooledEntry> oldestFirst = idle.descendingIterator();
+        while (oldestFirst.hasNext() && idle.size() > minIdle) {
+            PooledEntry entry = oldestFirst.next();
+            if (now - entry.lastReturnedNanos > idleLimit && idle.removeFirstOccurrence(entry)) {
+                destroy(entry);
+            }
+        }
+        while (idle.size() < minIdle && total.get() < maxSize && permits.tryAcquire()) {
+            try {
+                PooledEntry entry = create();
+                entry.lastReturnedNanos = System.nanoTime();
+                idle.offerLast(entry);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Closes every idle connection and stops the evictor. Connections still on loan are closed as they come back.
+     */
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            destroy(entry);
+        }
+    }
+
+    /**
+     * @return the number of connections currently on loan
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return the number of open connections waiting in the pool
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of open physical connections, on loan or idle
+     */
+    public int getTotalCount() {
+        return total.get();
+    }
+
+    /**
+     * @return an estimate of the number of callers blocked waiting for a connection
+     */
+    public int getWaiterCount() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * @return the configured maximum number of connections
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of physical connections opened since the pool was created
+     */
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    /**
+     * @return the number of physical connections closed since the pool was created
+     */
+    public long getDestroyedCount() {
+        return destroyed.sum();
+    }
+
+    /**
+     * @return the number of getConnection() calls that gave up waiting
+     */
+    public long getBorrowTimeoutCount() {
+        return borrowTimeouts.sum();
+    }
+
+    /**
+     * @return the number of idle connections discarded because they failed validation
+     */
+    public long getValidationFailureCount() {
+        return validationFailures.sum();
+    }
+
+    /**
+     * @return the distribution of time spent inside getConnection(), including waiting
+     */
+    public LatencyHistogram getBorrowLatency() {
+        return borrowLatency;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return source.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        source.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        source.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return source.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return source.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return source.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || source.isWrapperFor(iface);
+    }
+
+    /**
+     * A physical connection owned by the pool.
+     */
+    private class PooledEntry {
+        private final Connection physical;
+        private final boolean defaultReadOnly;
+        private final int defaultIsolation;
+        private volatile long lastReturnedNanos = System.nanoTime();
+
+        private PooledEntry(Connection physical) throws SQLException {
+            this.physical = physical;
+            this.defaultReadOnly = physical.isReadOnly();
+            this.defaultIsolation = physical.getTransactionIsolation();
+        }
+
+        /**
+         * @return a new proxy for this connection that returns it to the pool on close()
+         */
+        private Connection lease() {
+            AtomicBoolean released = new AtomicBoolean();
+            List<Statement> statements = new ArrayList<>();
+            InvocationHandler handler = (proxy, method, args) -> invoke(released, statements, proxy, method, args);
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, handler);
+        }
+
+        private Object invoke(AtomicBoolean released, List<Statement> statements, Object proxy, Method method,
+                              Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (released.compareAndSet(false, true)) {
+                        closeAll(statements);
+                        giveBack(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return released.get() || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + physical + "]";
+                default:
+                    if (released.get()) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    try {
+                        Object result = method.invoke(physical, args);
+                        if (result instanceof Statement) {
+                            statements.add((Statement) result);
+                        }
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+
+        /**
+         * Statements left open by the borrower would otherwise pile up on the long-lived physical connection.
+         */
+        private void closeAll(List<Statement> statements) {
+            for (Statement statement : statements) {
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {
+                }
+            }
+            statements.clear();
+        }
+    }
+}
@@ -4,6 +4,11 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
@@ -13,7 +18,17 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * By default every call to getConnection() opens a new physical connection. Setting socialmedia.db.pool=bounded
+ * (see {@link AppConfig}) puts a {@link ConnectionPool} in front of the h2 DataSource instead, sized by the
+ * socialmedia.db.pool.* properties below. The DAO classes do not need to change either way.
+ *
+ * Setting socialmedia.db.replicas to a comma separated list of H2 URLs adds read replicas: getReadConnection()
+ * then goes through a {@link ReplicaRouter}, and getConnection() stays on the primary. See ReplicaRouter for how
+ * read-your-writes is kept.
+ *
+ * Setting socialmedia.db.shards above 1 spreads the message table over that many databases (see
+ * {@link #getShardDataSources}). Shard 0 is the database above, pool and replicas included; the other shards are
+ * plain H2 DataSources and always read from their own primary.
  */
 public class ConnectionUtil {
 
@@ -32,17 +47,59 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * The h2 DataSource, which opens a new physical connection on every call.
+	 */
+	private static JdbcDataSource h2 = new JdbcDataSource();
+
+	/**
+	 * The bounded pool in front of h2, or null when pooling is turned off.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static ConnectionPool boundedPool;
+
+	/**
+	 * The DataSource that getConnection() draws from: either h2 itself or boundedPool.
+	 */
+	private static DataSource pool;
+
+	/**
+	 * Routes reads to the replicas, or null when no replicas are configured.
+	 */
+	private static ReplicaRouter router;
 
 	/**
 	 * static initialization block to establish credentials for DataSoure Pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		h2.setURL(url);
+		h2.setUser(username);
+		h2.setPassword(password);
+		if ("bounded".equalsIgnoreCase(AppConfig.getString("socialmedia.db.pool", "simple"))) {
+			boundedPool = new ConnectionPool(h2,
+					AppConfig.getInt("socialmedia.db.pool.minIdle", 2),
+					AppConfig.getInt("socialmedia.db.pool.maxSize", 10),
+					AppConfig.getLong("socialmedia.db.pool.borrowTimeoutMillis", 5000),
+					AppConfig.getLong("socialmedia.db.pool.idleTimeoutMillis", 60000),
+					AppConfig.getBoolean("socialmedia.db.pool.validateOnBorrow", true));
+			pool = boundedPool;
+		} else {
+			pool = h2;
+		}
+		String replicaUrls = AppConfig.getString("socialmedia.db.replicas", "");
+		if (!replicaUrls.isEmpty()) {
+			List<DataSource> replicas = new ArrayList<>();
+			for (String replicaUrl : replicaUrls.split(",")) {
+				JdbcDataSource replica = new JdbcDataSource();
+				replica.setURL(replicaUrl.trim());
+				replica.setUser(username);
+				replica.setPassword(password);
+				replicas.add(replica);
+			}
+			router = new ReplicaRouter(pool, replicas, "leastBusy".equalsIgnoreCase(
+					AppConfig.getString("socialmedia.db.replicaSelection", "roundRobin"))
+					? ReplicaRouter.Selection.LEAST_BUSY : ReplicaRouter.Selection.ROUND_ROBIN);
+			router.syncReplicas();
+			router.startSync(AppConfig.getLong("socialmedia.db.replicaSyncMillis", 1000));
+		}
 	}
 
 	/**
@@ -50,7 +107,23 @@ public class ConnectionUtil {
 	 */
 	public static Connection getConnection() {
 		try {
-			return pool.getConnection();
+			return router == null ? pool.getConnection() : router.getWriteConnection();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return an active connection for queries only, to a read replica when one is fresh enough for this thread
+	 */
+	public static Connection getReadConnection() {
+		if (router == null) {
+			return getConnection();
+		}
+		try {
+			return router.getReadConnection();
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
@@ -58,6 +131,52 @@ public class ConnectionUtil {
 		return null;
 	}
 
+	/**
+	 * Runs reads that must see every committed write, eg to fill a cache, bypassing any lagging replica.
+	 *
+	 * @param read the reads to run
+	 * @return their result
+	 */
+	public static <T> T readLatest(Supplier<T> read) {
+		return router == null ? read.get() : router.readLatest(read);
+	}
+
+	/**
+	 * @return the replica router, or null if no replicas are configured
+	 */
+	public static ReplicaRouter getReplicaRouter() {
+		return router;
+	}
+
+	/**
+	 * Lists the databases the message table is sharded over: this class's own DataSource first, then one H2
+	 * database per further shard, at socialmedia.db.shardUrl formatted with the shard number (default
+	 * jdbc:h2:./h2/shard%d;).
+	 *
+	 * @return socialmedia.db.shards DataSources (default 1, ie no sharding)
+	 */
+	public static List<DataSource> getShardDataSources() {
+		List<DataSource> shards = new ArrayList<>();
+		shards.add(pool);
+		int count = AppConfig.getInt("socialmedia.db.shards", 1);
+		String shardUrl = AppConfig.getString("socialmedia.db.shardUrl", "jdbc:h2:./h2/shard%d;");
+		for (int shard = 1; shard < count; shard++) {
+			JdbcDataSource source = new JdbcDataSource();
+			source.setURL(String.format(shardUrl, shard));
+			source.setUser(username);
+			source.setPassword(password);
+			shards.add(source);
+		}
+		return shards;
+	}
+
+	/**
+	 * @return the bounded connection pool, for reading its live statistics, or null if pooling is turned off
+	 */
+	public static ConnectionPool getConnectionPool() {
+		return boundedPool;
+	}
+
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
@@ -66,7 +185,16 @@ public class ConnectionUtil {
 	public static void resetTestDatabase() {
 		try {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			Connection conn = getConnection();
+			try {
+				RunScript.execute(conn, sqlReader);
+			} finally {
+				conn.close();
+			}
+			IntIdGenerator.reset();
+			if (router != null) {
+				router.syncReplicas();
+			}
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
 		}
@@ -0,0 +1,155 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from primitive int keys to non-null values, with open addressing and linear probing over two parallel
+ * arrays. Keys are never boxed, and a lookup is a multiply, a shift and usually one array read, with no Entry
+ * objects for the garbage collector to trace.
+ *
+ * A slot is empty when its value is null, so null values are not allowed. Removal shifts the following entries of
+ * the probe run back instead of leaving tombstones, so lookups stay short however many keys come and go. The table
+ * doubles at 3/4 full.
+ *
+ * Not thread-safe; callers hold their own lock.
+ */
+public class IntHashMap<V> {
+
+    private int[] keys;
+    private V[] values;
+    private int size;
+    private int mask;
+
+    public IntHashMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize the number of keys the map should hold without growing
+     */
+    public IntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize * 4 / 3 + 1, 4) * 2 - 1);
+        allocate(capacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = (V[]) new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * @param key a key
+     * @return the value for key, or null if there is none
+     */
+    public V get(int key) {
+        for (int i = slot(key); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param key a key
+     * @param value the value to store, not null
+     * @return the value previously stored for key, or null
+     */
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("IntHashMap does not allow null values");
+        }
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > (mask + 1) / 4 * 3) {
+            grow();
+        }
+        return null;
+    }
+
+    /**
+     * @param key a key
+     * @return the value that was stored for key, or null if there was none
+     */
+    public V remove(int key) {
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                break;
+            }
+        }
+        V removed = values[i];
+        if (removed == null) {
+            return null;
+        }
+        // move later entries of the run back into the gap if their home slot is at or before it
+        int gap = i;
+        for (int j = (gap + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        values[gap] = null;
+        size--;
+        return removed;
+    }
+
+    /**
+     * @return the number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return every key, in no particular order
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                result[n++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes every key.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        V[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
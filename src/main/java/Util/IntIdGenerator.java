@@ -0,0 +1,131 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out int IDs in the application, so an insert can carry its ID instead of asking the database for the
+ * generated key afterwards: node n of N hands out n, n+N, n+2N, ... above the highest ID in the table when it
+ * started, so several nodes writing to one database never collide and never coordinate. nextId() is a single atomic
+ * increment.
+ *
+ * Every writer of the table has to take its IDs from a generator like this once it is enabled: a row added through
+ * the identity column by anyone else could take an ID a node is about to hand out. IDs are not time-ordered across
+ * nodes, only unique; they are increasing per node.
+ */
+public class IntIdGenerator {
+
+    private static final Map<String, IntIdGenerator> generators = new ConcurrentHashMap<>();
+
+    private final AtomicInteger counter;
+    private final int node;
+    private final int nodes;
+
+    /**
+     * @param highestUsedId the highest ID already in the table, or 0 if it is empty
+     * @param node this node's number, from 0 to nodes - 1
+     * @param nodes the number of nodes writing to the table
+     */
+    public IntIdGenerator(int highestUsedId, int node, int nodes) {
+        if (nodes < 1 || node < 0 || node >= nodes) {
+            throw new IllegalArgumentException("node " + node + " of " + nodes);
+        }
+        this.node = node;
+        this.nodes = nodes;
+        this.counter = new AtomicInteger(Math.max(highestUsedId, 0) / nodes + 1);
+    }
+
+    /**
+     * @return true if socialmedia.ids.mode=app, ie the DAOs assign IDs themselves (the default, db, keeps the
+     *         identity columns)
+     */
+    public static boolean isEnabled() {
+        return "app".equalsIgnoreCase(AppConfig.getString("socialmedia.ids.mode", "db"));
+    }
+
+    /**
+     * Returns the generator for an ID column, shared by every DAO instance in the process. The first call creates
+     * it for this node, socialmedia.ids.node of socialmedia.ids.nodes (default 0 of 1), above the highest value in
+     * the column.
+     *
+     * @param conn a connection to the database, used only the first time
+     * @param table the table
+     * @param column its ID column
+     * @return the generator
+     */
+    public static IntIdGenerator forColumn(Connection conn, String table, String column) throws SQLException {
+        String key = table + "." + column;
+        IntIdGenerator generator = generators.get(key);
+        if (generator != null) {
+            return generator;
+        }
+        synchronized (generators) {
+            generator = generators.get(key);
+            if (generator == null) {
+                generator = seededFrom(conn, table, column);
+                generators.put(key, generator);
+            }
+            return generator;
+        }
+    }
+
+    /**
+     * Forgets every shared generator, so the next {@link #forColumn} seeds again, eg after the tables were
+     * recreated.
+     */
+    public static void reset() {
+        generators.clear();
+    }
+
+    /**
+     * Creates a generator for this node above the highest value of an ID column.
+     *
+     * @param conn a connection to the database
+     * @param table the table
+     * @param column its ID column
+     * @return the generator
+     */
+    public static IntIdGenerator seededFrom(Connection conn, String table, String column) throws SQLException {
+        ResultSet rs = conn.createStatement().executeQuery(
+                "SELECT COALESCE(MAX(" + column + "), 0) FROM " + table);
+        rs.next();
+        return new IntIdGenerator(rs.getInt(1), AppConfig.getInt("socialmedia.ids.node", 0),
+                AppConfig.getInt("socialmedia.ids.nodes", 1));
+    }
+
+    /**
+     * @return a new ID
+     * @throws IllegalStateException once the int range is used up
+     */
+    public int nextId() {
+        return toId(counter.getAndIncrement());
+    }
+
+    /**
+     * Reserves IDs for a whole batch with one atomic add.
+     *
+     * @param count the number of IDs
+     * @return count new IDs, in increasing order
+     * @throws IllegalStateException once the int range is used up
+     */
+    public int[] nextIds(int count) {
+        int first = counter.getAndAdd(count);
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = toId(first + i);
+        }
+        return ids;
+    }
+
+    private int toId(int step) {
+        long id = (long) step * nodes + node;
+        if (step < 0 || id > Integer.MAX_VALUE) {
+            throw new IllegalStateException("int ID range used up");
+        }
+        return (int) id;
+    }
+}
@@ -0,0 +1,190 @@
+package Util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The Metrics class is the application-wide registry of request, DAO and component metrics, rendered in the
+ * Prometheus text exposition format by {@link #renderPrometheus()}.
+ *
+ * Recording never takes a lock: series are looked up in ConcurrentHashMaps (a plain get once a series exists), and
+ * counts and latencies go into LongAdders and {@link LatencyHistogram}s.
+ */
+public class Metrics {
+
+    /**
+     * Upper bounds, in seconds, of the histogram buckets exported for every latency series.
+     */
+    private static final double[] BUCKETS_SECONDS =
+            {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static final ConcurrentHashMap<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, DaoMetrics> daoMethods = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Records one finished HTTP request.
+     *
+     * @param method the HTTP method, eg GET
+     * @param route the route template, eg /messages/{message_id}
+     * @param status the response status code
+     * @param nanos how long the request took
+     */
+    public static void recordRequest(String method, String route, int status, long nanos) {
+        String key = method + " " + route;
+        RouteMetrics metrics = routes.get(key);
+        if (metrics == null) {
+            metrics = routes.computeIfAbsent(key, k -> new RouteMetrics(method, route));
+        }
+        metrics.latency.record(nanos);
+        LongAdder count = metrics.statuses.get(status);
+        if (count == null) {
+            count = metrics.statuses.computeIfAbsent(status, s -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Records the duration of one DAO method call.
+     *
+     * @param operation the DAO class and method, eg MessageDAO.getMessageById
+     * @param startNanos the System.nanoTime() reading taken when the call started
+     */
+    public static void recordDao(String operation, long startNanos) {
+        dao(operation).latency.recordSince(startNanos);
+    }
+
+    /**
+     * Counts a database error in a DAO method.
+     *
+     * @param operation the DAO class and method, eg MessageDAO.getMessageById
+     */
+    public static void recordDaoError(String operation) {
+        dao(operation).errors.increment();
+    }
+
+    private static DaoMetrics dao(String operation) {
+        DaoMetrics metrics = daoMethods.get(operation);
+        if (metrics == null) {
+            metrics = daoMethods.computeIfAbsent(operation, k -> new DaoMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Registers a value that is read every time the metrics are rendered, such as a pool size or a cache hit
+     * count. Registering the same name again replaces the earlier supplier.
+     *
+     * @param name the metric name, eg socialmedia_db_pool_active_connections
+     * @param type "gauge" or "counter"
+     * @param help a one-line description
+     * @param value supplies the current value
+     */
+    public static void registerGauge(String name, String type, String help, DoubleSupplier value) {
+        gauges.put(name, new Gauge(type, help, value));
+    }
+
+    /**
+     * @return every metric in the Prometheus text exposition format, version 0.0.4
+     */
+    public static String renderPrometheus() {
+        StringBuilder out = new StringBuilder();
+
+        out.append("# HELP http_requests_total HTTP requests by route and status code.\n");
+        out.append("# TYPE http_requests_total counter\n");
+        Map<String, RouteMetrics> sortedRoutes = new TreeMap<>(routes);
+        for (RouteMetrics metrics : sortedRoutes.values()) {
+            for (Map.Entry<Integer, LongAdder> status : new TreeMap<>(metrics.statuses).entrySet()) {
+                out.append("http_requests_total{").append(metrics.labels)
+                        .append(",status=\"").append(status.getKey()).append("\"} ")
+                        .append(status.getValue().sum()).append('\n');
+            }
+        }
+        out.append("# HELP http_request_duration_seconds HTTP request latency by route.\n");
+        out.append("# TYPE http_request_duration_seconds histogram\n");
+        for (RouteMetrics metrics : sortedRoutes.values()) {
+            appendHistogram(out, "http_request_duration_seconds", metrics.labels, metrics.latency);
+        }
+
+        Map<String, DaoMetrics> sortedDao = new TreeMap<>(daoMethods);
+        out.append("# HELP db_operation_duration_seconds DAO method latency.\n");
+        out.append("# TYPE db_operation_duration_seconds histogram\n");
+        for (Map.Entry<String, DaoMetrics> entry : sortedDao.entrySet()) {
+            appendHistogram(out, "db_operation_duration_seconds", operationLabel(entry.getKey()),
+                    entry.getValue().latency);
+        }
+        out.append("# HELP db_errors_total SQLExceptions caught in DAO methods.\n");
+        out.append("# TYPE db_errors_total counter\n");
+        for (Map.Entry<String, DaoMetrics> entry : sortedDao.entrySet()) {
+            out.append("db_errors_total{").append(operationLabel(entry.getKey())).append("} ")
+                    .append(entry.getValue().errors.sum()).append('\n');
+        }
+
+        for (Map.Entry<String, Gauge> entry : new TreeMap<>(gauges).entrySet()) {
+            Gauge gauge = entry.getValue();
+            out.append("# HELP ").append(entry.getKey()).append(' ').append(gauge.help).append('\n');
+            out.append("# TYPE ").append(entry.getKey()).append(' ').append(gauge.type).append('\n');
+            out.append(entry.getKey()).append(' ').append(formatDouble(gauge.value.getAsDouble())).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void appendHistogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        for (double bound : BUCKETS_SECONDS) {
+            long nanos = (long) (bound * TimeUnit.SECONDS.toNanos(1));
+            out.append(name).append("_bucket{").append(labels).append(",le=\"").append(formatDouble(bound))
+                    .append("\"} ").append(histogram.countAtOrBelow(nanos)).append('\n');
+        }
+        long count = histogram.getCount();
+        out.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(count).append('\n');
+        out.append(name).append("_sum{").append(labels).append("} ")
+                .append(formatDouble(histogram.getSum() / 1e9)).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(count).append('\n');
+    }
+
+    private static String operationLabel(String operation) {
+        return "operation=\"" + escape(operation) + "\"";
+    }
+
+    private static String formatDouble(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static class RouteMetrics {
+        private final String labels;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final ConcurrentHashMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        private RouteMetrics(String method, String route) {
+            this.labels = "method=\"" + escape(method) + "\",route=\"" + escape(route) + "\"";
+        }
+    }
+
+    private static class DaoMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+    }
+
+    private static class Gauge {
+        private final String type;
+        private final String help;
+        private final DoubleSupplier value;
+
+        private Gauge(String type, String help, DoubleSupplier value) {
+            this.type = type;
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+import io.javalin.json.JsonMapper;
+
+/**
+ * The Javalin JsonMapper for this API. Responses made of the models ModelJsonWriter knows are written by it; every
+ * other type, and all request bodies, go to the Jackson mapper it wraps.
+ */
+public class ModelJsonMapper implements JsonMapper {
+
+    private final JsonMapper fallback;
+
+    /**
+     * @param fallback the mapper for everything ModelJsonWriter does not handle, normally a JavalinJackson
+     */
+    public ModelJsonMapper(JsonMapper fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * @param obj the response body
+     * @return its JSON encoded as UTF-8, which is what Javalin would send for toJsonString
+     */
+    public byte[] toJsonBytes(Object obj, Type type) {
+        if (ModelJsonWriter.supports(obj)) {
+            return ModelJsonWriter.toJsonBytes(obj);
+        }
+        return fallback.toJsonString(obj, type).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toJsonString(Object obj, Type type) {
+        if (ModelJsonWriter.supports(obj)) {
+            return ModelJsonWriter.toJsonString(obj);
+        }
+        return fallback.toJsonString(obj, type);
+    }
+
+    @Override
+    public InputStream toJsonStream(Object obj, Type type) {
+        if (ModelJsonWriter.supports(obj)) {
+            return new ByteArrayInputStream(ModelJsonWriter.toJsonBytes(obj));
+        }
+        return fallback.toJsonStream(obj, type);
+    }
+
+    @Override
+    public <T> T fromJsonString(String json, Type targetType) {
+        return fallback.fromJsonString(json, targetType);
+    }
+
+    @Override
+    public <T> T fromJsonStream(InputStream json, Type targetType) {
+        return fallback.fromJsonStream(json, targetType);
+    }
+}
@@ -0,0 +1,265 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import Model.Account;
+import Model.Message;
+import Model.MessagePage;
+
+/**
+ * The ModelJsonWriter class turns the models that make up most response bodies (Message, Account, lists of
+ * messages and MessagePage) into JSON without going through Jackson's reflective serializers. Field names are
+ * written from pre-encoded constants, numbers are formatted in place, and each string is escaped and encoded to
+ * UTF-8 in a single pass, all into a byte buffer that each thread keeps and reuses.
+ *
+ * The output is byte for byte what the HTTP responses held before: the UTF-8 encoding of
+ * ObjectMapper.writeValueAsString, fields in declaration order, control characters escaped (\n style where JSON has
+ * a short form, otherwise \\u00XX with upper case hex), everything else above U+001F written as is, and an unpaired
+ * surrogate replaced by '?' the way String.getBytes does.
+ */
+public final class ModelJsonWriter {
+
+    /**
+     * A thread keeps its buffer between calls unless a large response grew it beyond this many bytes.
+     */
+    private static final int MAX_RETAINED_BYTES = 64 * 1024;
+
+    private static final ThreadLocal<ModelJsonWriter> WRITERS = ThreadLocal.withInitial(ModelJsonWriter::new);
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * For each ASCII character: 0 if it is written as is, the letter after the backslash if it has a short
+     * escape, or 'u' if it is written as \\u00XX.
+     */
+    private static final byte[] ESCAPES = new byte[128];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = 'u';
+        }
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\t'] = 't';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\r'] = 'r';
+    }
+
+    private static final byte[] MESSAGE_ID = ascii("{\"message_id\":");
+    private static final byte[] POSTED_BY = ascii(",\"posted_by\":");
+    private static final byte[] MESSAGE_TEXT = ascii(",\"message_text\":");
+    private static final byte[] TIME_POSTED_EPOCH = ascii(",\"time_posted_epoch\":");
+    private static final byte[] ACCOUNT_ID = ascii("{\"account_id\":");
+    private static final byte[] USERNAME = ascii(",\"username\":");
+    private static final byte[] PASSWORD = ascii(",\"password\":");
+    private static final byte[] MESSAGES = ascii("{\"messages\":");
+    private static final byte[] NEXT_CURSOR = ascii(",\"next_cursor\":");
+    private static final byte[] NULL = ascii("null");
+
+    private byte[] buffer = new byte[1024];
+    private int length;
+
+    private ModelJsonWriter() {
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @param value any object
+     * @return true if value is a Message, an Account, a MessagePage, or a List holding only Messages
+     */
+    public static boolean supports(Object value) {
+        if (value instanceof Message || value instanceof Account || value instanceof MessagePage) {
+            return true;
+        }
+        if (!(value instanceof List)) {
+            return false;
+        }
+        for (Object element : (List<?>) value) {
+            if (!(element instanceof Message)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param value an object for which supports returns true
+     * @return its JSON, encoded as UTF-8
+     * @throws IllegalArgumentException if value is of any other type
+     */
+    public static byte[] toJsonBytes(Object value) {
+        ModelJsonWriter writer = WRITERS.get();
+        writer.length = 0;
+        writer.writeValue(value);
+        byte[] json = Arrays.copyOf(writer.buffer, writer.length);
+        if (writer.buffer.length > MAX_RETAINED_BYTES) {
+            writer.buffer = new byte[1024];
+        }
+        return json;
+    }
+
+    /**
+     * @param value an object for which supports returns true
+     * @return its JSON
+     * @throws IllegalArgumentException if value is of any other type
+     */
+    public static String toJsonString(Object value) {
+        return new String(toJsonBytes(value), StandardCharsets.UTF_8);
+    }
+
+    private void writeValue(Object value) {
+        if (value instanceof Message) {
+            writeMessage((Message) value);
+        } else if (value instanceof Account) {
+            writeAccount((Account) value);
+        } else if (value instanceof MessagePage) {
+            MessagePage page = (MessagePage) value;
+            writeBytes(MESSAGES);
+            writeMessages(page.getMessages());
+            writeBytes(NEXT_CURSOR);
+            writeString(page.getNext_cursor());
+            writeByte('}');
+        } else if (value instanceof List) {
+            writeMessages((List<?>) value);
+        } else {
+            throw new IllegalArgumentException("cannot write " + (value == null ? null : value.getClass()));
+        }
+    }
+
+    private void writeMessages(List<?> messages) {
+        if (messages == null) {
+            writeBytes(NULL);
+            return;
+        }
+        writeByte('[');
+        for (int i = 0, n = messages.size(); i < n; i++) {
+            if (i > 0) {
+                writeByte(',');
+            }
+            Object message = messages.get(i);
+            if (!(message instanceof Message)) {
+                throw new IllegalArgumentException("cannot write " + (message == null ? null : message.getClass()));
+            }
+            writeMessage((Message) message);
+        }
+        writeByte(']');
+    }
+
+    private void writeMessage(Message message) {
+        writeBytes(MESSAGE_ID);
+        writeLong(message.getMessage_id());
+        writeBytes(POSTED_BY);
+        writeLong(message.getPosted_by());
+        writeBytes(MESSAGE_TEXT);
+        writeString(message.getMessage_text());
+        writeBytes(TIME_POSTED_EPOCH);
+        writeLong(message.getTime_posted_epoch());
+        writeByte('}');
+    }
+
+    private void writeAccount(Account account) {
+        writeBytes(ACCOUNT_ID);
+        writeLong(account.getAccount_id());
+        writeBytes(USERNAME);
+        writeString(account.getUsername());
+        writeBytes(PASSWORD);
+        writeString(account.getPassword());
+        writeByte('}');
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    private void writeByte(char c) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) c;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void writeLong(long value) {
+        ensureCapacity(20);
+        // digits are taken from the negative value, which unlike the positive one always exists
+        if (value < 0) {
+            buffer[length++] = '-';
+        } else {
+            value = -value;
+        }
+        int start = length;
+        do {
+            buffer[length++] = (byte) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+    }
+
+    /**
+     * Writes a quoted, escaped string, or null. Room for the worst case (six bytes per character, for \\u00XX) is
+     * made up front, so the loop itself never checks capacity.
+     */
+    private void writeString(String text) {
+        if (text == null) {
+            writeBytes(NULL);
+            return;
+        }
+        int n = text.length();
+        ensureCapacity(6 * n + 2);
+        byte[] out = buffer;
+        int pos = length;
+        out[pos++] = '"';
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                byte escape = ESCAPES[c];
+                if (escape == 0) {
+                    out[pos++] = (byte) c;
+                } else if (escape == 'u') {
+                    out[pos++] = '\\';
+                    out[pos++] = 'u';
+                    out[pos++] = '0';
+                    out[pos++] = '0';
+                    out[pos++] = HEX[c >> 4];
+                    out[pos++] = HEX[c & 0xF];
+                } else {
+                    out[pos++] = '\\';
+                    out[pos++] = escape;
+                }
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | c >> 6);
+                out[pos++] = (byte) (0x80 | c & 0x3F);
+            } else if (!Character.isSurrogate(c)) {
+                out[pos++] = (byte) (0xE0 | c >> 12);
+                out[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+                out[pos++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                out[pos++] = (byte) (0xF0 | codePoint >> 18);
+                out[pos++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                out[pos++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                out[pos++] = (byte) (0x80 | codePoint & 0x3F);
+            } else {
+                out[pos++] = '?';
+            }
+        }
+        out[pos++] = '"';
+        length = pos;
+    }
+}
@@ -0,0 +1,58 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * A keyset pagination cursor. It remembers the (time_posted_epoch, message_id) of the last message on a page, so the
+ * next page can start right after it with an index range scan instead of an OFFSET. Clients only ever see the
+ * opaque, url-safe string produced by {@link #encode()}.
+ */
+public class PageCursor {
+
+    private final long timePostedEpoch;
+    private final int messageId;
+
+    /**
+     * @param timePostedEpoch the time_posted_epoch of the last message returned
+     * @param messageId the message_id of the last message returned
+     */
+    public PageCursor(long timePostedEpoch, int messageId) {
+        this.timePostedEpoch = timePostedEpoch;
+        this.messageId = messageId;
+    }
+
+    public long getTimePostedEpoch() {
+        return timePostedEpoch;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * @return the opaque string form of this cursor
+     */
+    public String encode() {
+        String raw = timePostedEpoch + ":" + messageId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a cursor previously produced by {@link #encode()}.
+     *
+     * @param cursor the opaque cursor string
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the string is not a valid cursor
+     */
+    public static PageCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            return new PageCursor(Long.parseLong(raw.substring(0, separator)),
+                    Integer.parseInt(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * A growable sorted array of message_ids, used as the posted_by index of the in-heap stores and as the postings
+ * lists of the search index. New IDs are increasing, so add() is almost always an append.
+ *
+ * Not thread-safe; callers hold their own lock.
+ */
+public class Postings {
+    private int[] ids = new int[4];
+    private int size;
+
+    /**
+     * @param id a message_id; adding one that is already present does nothing
+     */
+    public void add(int id) {
+        int index = size == 0 || ids[size - 1] < id ? -(size + 1) : Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0) {
+            return;
+        }
+        index = -(index + 1);
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        ids[index] = id;
+        size++;
+    }
+
+    /**
+     * @param id a message_id
+     * @return true if it was present
+     */
+    public boolean remove(int id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    /**
+     * @param id a message_id
+     * @return true if it is present
+     */
+    public boolean contains(int id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    /**
+     * @param id a message_id, present or not
+     * @return the index of the first ID at or above id, or size() if there is none
+     */
+    public int indexOf(int id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    /**
+     * @param index between 0 and size() - 1
+     * @return the ID at that position in ascending order
+     */
+    public int get(int index) {
+        return ids[index];
+    }
+
+    /**
+     * @return the number of IDs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the backing array, without a copy; only its first size() entries are IDs, and it may be replaced
+     *         by the next add
+     */
+    public int[] array() {
+        return ids;
+    }
+
+    /**
+     * @return a copy of the IDs in ascending order
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+}
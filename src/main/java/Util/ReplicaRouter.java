@@ -0,0 +1,481 @@
+package Util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+/**
+ * Routes reads to read replicas and everything else to the primary database.
+ *
+ * Every write connection that ran a data-changing statement, whether prepared, called or executed directly on a
+ * Statement, bumps a write version when it is closed, i.e. after its work has committed. Read connections refuse
+ * data-changing statements with an SQLException, since a replica would take them silently and lose them at the
+ * next sync. Each replica remembers the write version it was last synced to. A thread carries
+ * the lowest version its reads must see: after the thread writes, that is its own write, and a caller can raise it
+ * with {@link #requireVersion} (for example from a cookie, to keep read-your-writes across requests). Reads go to
+ * a replica that is at least that fresh, picked round-robin or by fewest reads in flight; if none is, they go to
+ * the primary.
+ *
+ * H2 has no streaming replication, so {@link #syncReplicas} copies the whole primary into every replica with
+ * SCRIPT and RUNSCRIPT, taking each replica out of rotation and waiting for its open read connections to close
+ * before anything on it is dropped. That is fine for a test or demo replica of a small database; a real deployment
+ * would point the replica DataSources at databases kept in sync by the database itself and call markSynced
+ * instead.
+ */
+public class ReplicaRouter {
+
+    /**
+     * How a replica is picked among those that are fresh enough.
+     */
+    public enum Selection {
+        ROUND_ROBIN, LEAST_BUSY
+    }
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Selection selection;
+    private final AtomicLong writeVersion = new AtomicLong();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ThreadLocal<long[]> requiredVersion = ThreadLocal.withInitial(() -> new long[1]);
+    private final ThreadLocal<boolean[]> staleRead = ThreadLocal.withInitial(() -> new boolean[1]);
+    private final LongAdder primaryReads = new LongAdder();
+    private final long drainMillis;
+    private ScheduledExecutorService syncer;
+
+    /**
+     * @param primary the database that takes every write
+     * @param replicas the read replicas, possibly none
+     * @param selection how to pick among replicas
+     */
+    public ReplicaRouter(DataSource primary, List<DataSource> replicas, Selection selection) {
+        this(primary, replicas, selection, 10000);
+    }
+
+    /**
+     * @param primary the database that takes every write
+     * @param replicas the read replicas, possibly none
+     * @param selection how to pick among replicas
+     * @param drainMillis how long a sync waits for the reads on a replica to finish before it skips that replica
+     *                    until the next sync
+     */
+    public ReplicaRouter(DataSource primary, List<DataSource> replicas, Selection selection, long drainMillis) {
+        this.primary = primary;
+        this.selection = selection;
+        this.drainMillis = drainMillis;
+        for (DataSource replica : replicas) {
+            this.replicas.add(new Replica(replica));
+        }
+    }
+
+    /**
+     * @return a connection to the primary; closing it after a data-changing statement records a write
+     */
+    public Connection getWriteConnection() throws SQLException {
+        Connection physical = primary.getConnection();
+        AtomicBoolean wrote = new AtomicBoolean();
+        AtomicBoolean closed = new AtomicBoolean();
+        return wrap(physical, sql -> {
+            if (isWrite(sql)) {
+                wrote.set(true);
+            }
+        }, () -> {
+            if (closed.compareAndSet(false, true) && wrote.get()) {
+                long version = writeVersion.incrementAndGet();
+                long[] required = requiredVersion.get();
+                required[0] = Math.max(required[0], version);
+            }
+        });
+    }
+
+    /**
+     * @return a connection to a replica that has every write this thread must see, or to the primary if there is
+     *         none
+     */
+    public Connection getReadConnection() throws SQLException {
+        long required = requiredVersion.get()[0];
+        Replica replica = pick(required);
+        if (replica == null) {
+            primaryReads.increment();
+            return primary.getConnection();
+        }
+        if (replica.syncedVersion < writeVersion.get()) {
+            staleRead.get()[0] = true;
+        }
+        replica.reads.increment();
+        Connection physical;
+        try {
+            physical = replica.source.getConnection();
+        } catch (SQLException | RuntimeException e) {
+            replica.inFlight.decrementAndGet();
+            throw e;
+        }
+        AtomicBoolean closed = new AtomicBoolean();
+        return wrap(physical, sql -> {
+            if (isWrite(sql)) {
+                throw new SQLException("data-changing statement on a read connection: " + sql);
+            }
+        }, () -> {
+            if (closed.compareAndSet(false, true)) {
+                replica.inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Claims a read slot on a replica that is fresh enough. The slot is taken before the freshness check is
+     * repeated, so a sync that has taken the replica out of rotation either sees the slot and waits for it, or
+     * the check here sees the replica is out and lets it go.
+     */
+    private boolean claim(Replica replica, long required) {
+        if (replica.syncedVersion < required) {
+            return false;
+        }
+        replica.inFlight.incrementAndGet();
+        if (replica.syncedVersion < required) {
+            replica.inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private Replica pick(long required) {
+        int count = replicas.size();
+        if (count == 0) {
+            return null;
+        }
+        if (selection == Selection.LEAST_BUSY) {
+            Replica best = null;
+            for (Replica replica : replicas) {
+                if (replica.syncedVersion >= required
+                        && (best == null || replica.inFlight.get() < best.inFlight.get())) {
+                    best = replica;
+                }
+            }
+            // a sync may have taken the best one out of rotation meanwhile; any other fresh replica will do
+            if (best != null && claim(best, required)) {
+                return best;
+            }
+            for (Replica replica : replicas) {
+                if (replica != best && claim(replica, required)) {
+                    return replica;
+                }
+            }
+            return null;
+        }
+        int start = Math.floorMod(nextReplica.getAndIncrement(), count);
+        for (int i = 0; i < count; i++) {
+            Replica replica = replicas.get((start + i) % count);
+            if (claim(replica, required)) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs a read that must see every write committed so far, whatever this thread's own version is.
+     *
+     * @param read the read to run
+     * @return its result
+     */
+    public <T> T readLatest(Supplier<T> read) {
+        long[] required = requiredVersion.get();
+        long previous = required[0];
+        long raised = Math.max(previous, writeVersion.get());
+        required[0] = raised;
+        try {
+            return read.get();
+        } finally {
+            // keep the version of a write made during the read, otherwise go back to what the thread had
+            required[0] = required[0] > raised ? required[0] : previous;
+        }
+    }
+
+    /**
+     * Raises the version this thread's reads must see, eg to the version a client saw after its last write.
+     *
+     * @param version a value previously returned by {@link #getThreadVersion}
+     */
+    public void requireVersion(long version) {
+        long[] required = requiredVersion.get();
+        required[0] = Math.max(required[0], Math.min(version, writeVersion.get()));
+    }
+
+    /**
+     * @return the lowest write version this thread's reads see: its own last write or what it was asked to require
+     */
+    public long getThreadVersion() {
+        return requiredVersion.get()[0];
+    }
+
+    /**
+     * @return true if a read on this thread, since the last {@link #resetThread}, went to a replica that was
+     *         missing some committed writes
+     */
+    public boolean hadStaleRead() {
+        return staleRead.get()[0];
+    }
+
+    /**
+     * Forgets this thread's version and stale-read flag, eg at the end of a request.
+     */
+    public void resetThread() {
+        requiredVersion.get()[0] = 0;
+        staleRead.get()[0] = false;
+    }
+
+    /**
+     * Copies the primary into every replica and marks them as synced to the write version taken before the copy.
+     * Each replica is taken out of rotation first, and is only rewritten once every read connection open on it
+     * has closed, so no read ever sees a half-dropped schema. A replica whose reads do not finish within
+     * drainMillis is put back as it was and left for the next sync.
+     */
+    public void syncReplicas() {
+        long version = writeVersion.get();
+        List<String> script = new ArrayList<>();
+        try (Connection conn = primary.getConnection(); Statement statement = conn.createStatement();
+             ResultSet rs = statement.executeQuery("SCRIPT NOPASSWORDS NOSETTINGS")) {
+            while (rs.next()) {
+                script.add(rs.getString(1));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+        for (Replica replica : replicas) {
+            long synced = replica.syncedVersion;
+            // -1 is below every thread's required version, so claim() refuses the replica until it is rewritten
+            replica.syncedVersion = -1;
+            if (!drain(replica)) {
+                replica.syncedVersion = synced;
+                continue;
+            }
+            try (Connection conn = replica.source.getConnection(); Statement statement = conn.createStatement()) {
+                conn.setAutoCommit(false);
+                statement.execute("DROP ALL OBJECTS");
+                for (String sql : script) {
+                    if (!sql.startsWith("CREATE USER")) {
+                        statement.execute(sql);
+                    }
+                }
+                conn.commit();
+                synced = Math.max(synced, version);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            } finally {
+                replica.syncedVersion = synced;
+            }
+        }
+    }
+
+    /**
+     * Waits for the read connections open on a replica that is out of rotation to close.
+     *
+     * @return true once there are none, false if drainMillis passed first or the thread was interrupted
+     */
+    private boolean drain(Replica replica) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainMillis);
+        while (replica.inFlight.get() > 0) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records that a replica kept in sync by other means has every write up to the given version.
+     *
+     * @param index the position of the replica in the constructor's list
+     * @param version the write version the replica has caught up to
+     */
+    public void markSynced(int index, long version) {
+        Replica replica = replicas.get(index);
+        replica.syncedVersion = Math.max(replica.syncedVersion, version);
+    }
+
+    /**
+     * Calls {@link #syncReplicas} on a background thread every intervalMillis.
+     *
+     * @param intervalMillis the time between syncs
+     */
+    public synchronized void startSync(long intervalMillis) {
+        if (syncer != null || replicas.isEmpty() || intervalMillis <= 0) {
+            return;
+        }
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(() -> {
+            if (getReplicationLag() > 0) {
+                syncReplicas();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the number of writes the most out-of-date replica is missing
+     */
+    public long getReplicationLag() {
+        long lag = 0;
+        long current = writeVersion.get();
+        for (Replica replica : replicas) {
+            lag = Math.max(lag, current - replica.syncedVersion);
+        }
+        return lag;
+    }
+
+    /**
+     * @return the number of writes recorded so far
+     */
+    public long getWriteVersion() {
+        return writeVersion.get();
+    }
+
+    /**
+     * @return the number of replicas
+     */
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    /**
+     * @param index the position of the replica in the constructor's list
+     * @return the number of reads routed to that replica
+     */
+    public long getReplicaReads(int index) {
+        return replicas.get(index).reads.sum();
+    }
+
+    /**
+     * @return the number of reads that went to the primary because no replica was fresh enough
+     */
+    public long getPrimaryReads() {
+        return primaryReads.sum();
+    }
+
+    /**
+     * SQL that changes data: anything that is not a plain query or a session statement, and queries over a data
+     * change delta table such as SELECT * FROM FINAL TABLE (UPDATE ...). SET and SHOW only read or change settings
+     * of the session, eg SET LAZY_QUERY_EXECUTION around a streamed query, so they neither count as writes nor are
+     * refused on a read connection.
+     */
+    private static boolean isWrite(String sql) {
+        String normalized = sql.trim().toUpperCase(Locale.ROOT);
+        if (isSessionStatement(normalized)) {
+            return false;
+        }
+        return !normalized.startsWith("SELECT") || normalized.contains(" TABLE (") || normalized.contains(" TABLE(");
+    }
+
+    private static boolean isSessionStatement(String normalized) {
+        for (String keyword : new String[]{"SET", "SHOW"}) {
+            if (normalized.startsWith(keyword) && (normalized.length() == keyword.length()
+                    || Character.isWhitespace(normalized.charAt(keyword.length())))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sees the SQL of every statement before it reaches the database, and may refuse it by throwing.
+     */
+    private interface SqlObserver {
+        void sql(String sql) throws SQLException;
+    }
+
+    /**
+     * @return the SQL text passed to a JDBC call, or null if the call takes none: prepareStatement and
+     *         prepareCall on a connection, and execute*, addBatch on a plain Statement
+     */
+    private static String sqlOf(String method, Object[] args) {
+        if (args == null || args.length == 0 || !(args[0] instanceof String)) {
+            return null;
+        }
+        if (method.startsWith("prepare") || method.startsWith("execute") || method.equals("addBatch")) {
+            return (String) args[0];
+        }
+        return null;
+    }
+
+    private static Connection wrap(Connection physical, SqlObserver observer, Runnable onClose) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("close")) {
+                        try {
+                            physical.close();
+                        } finally {
+                            onClose.run();
+                        }
+                        return null;
+                    }
+                    String sql = sqlOf(method.getName(), args);
+                    if (sql != null) {
+                        observer.sql(sql);
+                    }
+                    Object result = invoke(method, physical, args);
+                    // SQL given to a plain Statement only shows up when it is executed, so watch those calls too
+                    if (result instanceof Statement && !(result instanceof PreparedStatement)) {
+                        return wrap((Statement) result, observer);
+                    }
+                    return result;
+                });
+    }
+
+    private static Statement wrap(Statement physical, SqlObserver observer) {
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                new Class<?>[]{Statement.class}, (proxy, method, args) -> {
+                    String sql = sqlOf(method.getName(), args);
+                    if (sql != null) {
+                        observer.sql(sql);
+                    }
+                    return invoke(method, physical, args);
+                });
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class Replica {
+        private final DataSource source;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder reads = new LongAdder();
+        private volatile long syncedVersion;
+
+        private Replica(DataSource source) {
+            this.source = source;
+        }
+    }
+}
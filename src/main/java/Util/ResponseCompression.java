@@ -0,0 +1,172 @@
+package Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The ResponseCompression class negotiates and applies HTTP content codings for response bodies. It supports gzip
+ * and deflate (the zlib format, as RFC 9110 defines it) at a configurable level, and leaves bodies smaller than a
+ * minimum size alone: below a kilobyte or so the header overhead eats most of the saving and the CPU time is wasted.
+ */
+public class ResponseCompression {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private final List<String> encodings;
+    private final int minSize;
+    private final int level;
+
+    /**
+     * @param encodings the codings offered, in order of preference, eg [gzip, deflate]; empty turns compression off
+     * @param minSize the smallest body, in bytes, that is compressed
+     * @param level the zlib compression level, 1 (fastest) to 9 (smallest)
+     */
+    public ResponseCompression(List<String> encodings, int minSize, int level) {
+        List<String> supported = new ArrayList<>();
+        for (String encoding : encodings) {
+            String name = encoding.trim().toLowerCase(Locale.ROOT);
+            if ((name.equals(GZIP) || name.equals(DEFLATE)) && !supported.contains(name)) {
+                supported.add(name);
+            }
+        }
+        this.encodings = Collections.unmodifiableList(supported);
+        this.minSize = Math.max(minSize, 0);
+        this.level = Math.min(Math.max(level, Deflater.BEST_SPEED), Deflater.BEST_COMPRESSION);
+    }
+
+    /**
+     * Reads the compression settings: socialmedia.compression.encodings (default "gzip,deflate", "none" turns it
+     * off), socialmedia.compression.minSize (default 1500 bytes, the threshold Javalin uses) and
+     * socialmedia.compression.level (default 6).
+     *
+     * @return the configured compression
+     */
+    public static ResponseCompression fromConfig() {
+        String encodings = AppConfig.getString("socialmedia.compression.encodings", "gzip,deflate");
+        return new ResponseCompression(
+                "none".equalsIgnoreCase(encodings) ? List.of() : List.of(encodings.split(",")),
+                AppConfig.getInt("socialmedia.compression.minSize", 1500),
+                AppConfig.getInt("socialmedia.compression.level", 6));
+    }
+
+    /**
+     * @return true if at least one coding is offered
+     */
+    public boolean isEnabled() {
+        return !encodings.isEmpty();
+    }
+
+    /**
+     * @return the smallest body, in bytes, that is compressed
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Picks the coding to use for a request. Codings the client rates higher win; ties go to the server's order.
+     * A coding listed with q=0 is refused, and "*" stands for every coding the client did not list.
+     *
+     * @param acceptEncoding the Accept-Encoding request header, may be null
+     * @return gzip or deflate, or null to send the body as it is
+     */
+    public String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || encodings.isEmpty()) {
+            return null;
+        }
+        String best = null;
+        double bestQ = 0;
+        for (String encoding : encodings) {
+            double q = quality(acceptEncoding, encoding);
+            if (q > bestQ) {
+                best = encoding;
+                bestQ = q;
+            }
+        }
+        return best;
+    }
+
+    private static double quality(String acceptEncoding, String encoding) {
+        double wildcard = 0;
+        for (String part : acceptEncoding.split(",")) {
+            String[] fields = part.split(";");
+            String name = fields[0].trim().toLowerCase(Locale.ROOT);
+            if (!name.equals(encoding) && !name.equals("*")) {
+                continue;
+            }
+            double q = 1;
+            for (int i = 1; i < fields.length; i++) {
+                String parameter = fields[i].trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    try {
+                        q = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (name.equals(encoding)) {
+                return q;
+            }
+            wildcard = q;
+        }
+        return wildcard;
+    }
+
+    /**
+     * @param body the uncompressed body
+     * @param encoding gzip or deflate, as returned by {@link #negotiate}
+     * @return the compressed body
+     */
+    public byte[] compress(byte[] body, String encoding) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (OutputStream compressed = wrap(out, encoding)) {
+            compressed.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Wraps a stream so that everything written to it is compressed. Closing the returned stream finishes the
+     * compressed data and closes the wrapped stream.
+     *
+     * @param out the stream to write the compressed bytes to
+     * @param encoding gzip or deflate, as returned by {@link #negotiate}
+     * @return the compressing stream
+     */
+    public OutputStream wrap(OutputStream out, String encoding) throws IOException {
+        if (GZIP.equals(encoding)) {
+            return new GZIPOutputStream(out, 8192) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+        if (DEFLATE.equals(encoding)) {
+            Deflater deflater = new Deflater(level);
+            return new DeflaterOutputStream(out, deflater, 8192) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+        throw new IllegalArgumentException("unsupported content coding: " + encoding);
+    }
+}
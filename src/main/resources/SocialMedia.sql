@@ -12,6 +12,11 @@ create table message (
     time_posted_epoch bigint,
     foreign key (posted_by) references  account(account_id)
 );
+-- keyset pagination walks messages in (time_posted_epoch, message_id) order, globally and per user
+create index message_time_idx on message (time_posted_epoch, message_id);
+create index message_posted_by_time_idx on message (posted_by, time_posted_epoch, message_id);
+-- H2 cannot read an index backwards, so a user's latest message needs its own descending index
+create index message_posted_by_time_desc_idx on message (posted_by, time_posted_epoch desc, message_id desc);
 
 insert into account (username, password) values ('testuser1', 'password');
 insert into message (posted_by, message_text, time_posted_epoch) values (1,'test message 1',1669947792);
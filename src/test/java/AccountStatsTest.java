@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.InMemoryMessageStore;
+import Model.AccountStats;
+import Model.Message;
+import Service.MessageStatistics;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AccountStatsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return webClient.send(request.header("Content-Type", "application/json").build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private AccountStats getStats(int userId) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + userId + "/stats")));
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), AccountStats.class);
+    }
+
+    /**
+     * Sending an HTTP GET request to "localhost:8080/accounts/1/stats" after startup, and again after a create,
+     * an update and a delete
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: statistics that count the message already in the table at startup and follow every change
+     */
+    @Test
+    public void getAccountStatsFollowsChanges() throws IOException, InterruptedException {
+        Assert.assertEquals(new AccountStats(1, 1, 1669947792L, 1669947792L, 14), getStats(1));
+
+        HttpResponse<String> created = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1, \"message_text\": \"hi\", \"time_posted_epoch\": 1669947800}")));
+        Assert.assertEquals(200, created.statusCode());
+        Assert.assertEquals(new AccountStats(1, 2, 1669947792L, 1669947800L, 8), getStats(1));
+
+        HttpResponse<String> updated = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"test message one!\"}")));
+        Assert.assertEquals(200, updated.statusCode());
+        Assert.assertEquals(new AccountStats(1, 2, 1669947792L, 1669947800L, 9.5), getStats(1));
+
+        int createdId = objectMapper.readTree(created.body()).get("message_id").asInt();
+        HttpResponse<String> deleted = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + createdId))
+                .DELETE());
+        Assert.assertEquals(200, deleted.statusCode());
+        Assert.assertEquals(new AccountStats(1, 1, 1669947792L, 1669947792L, 17), getStats(1));
+    }
+
+    /**
+     * Sending an HTTP GET request to "localhost:8080/accounts/99/stats" for a user with no messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a message count of zero, with no first or last post time
+     */
+    @Test
+    public void getAccountStatsWithoutMessages() throws IOException, InterruptedException {
+        Assert.assertEquals(new AccountStats(99, 0, null, null, 0), getStats(99));
+    }
+
+    /**
+     * Deleting an account's first or last message moves the time range to the next message at that end, and
+     * deleting its only message leaves no range at all.
+     */
+    @Test
+    public void statisticsFollowDeletedEdges() {
+        InMemoryMessageStore store = new InMemoryMessageStore(null, accountId -> true);
+        MessageStatistics statistics = new MessageStatistics(store);
+        Message[] messages = new Message[4];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = store.insertMessage(new Message(7, "message " + i, 100 + 10 * i));
+            statistics.created(messages[i]);
+        }
+        Assert.assertEquals(new AccountStats(7, 4, 100L, 130L, 9), statistics.get(7));
+
+        statistics.deleted(store.deleteMessage(messages[3].getMessage_id()));
+        Assert.assertEquals(new AccountStats(7, 3, 100L, 120L, 9), statistics.get(7));
+        statistics.deleted(store.deleteMessage(messages[0].getMessage_id()));
+        Assert.assertEquals(new AccountStats(7, 2, 110L, 120L, 9), statistics.get(7));
+        statistics.deleted(store.deleteMessage(messages[1].getMessage_id()));
+        statistics.deleted(store.deleteMessage(messages[2].getMessage_id()));
+        Assert.assertEquals(new AccountStats(7, 0, null, null, 0), statistics.get(7));
+
+        statistics.created(store.insertMessage(new Message(7, "back", 50)));
+        Assert.assertEquals(new AccountStats(7, 1, 50L, 50L, 4), statistics.get(7));
+    }
+}
@@ -0,0 +1,58 @@
+package Benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Seeds the h2 database with a known data set for the benchmarks. After {@link #seed} the account table holds
+ * testuser1 plus accounts benchuser1..benchuserN (password "password"), and the message table holds the sample
+ * message plus the requested number of messages spread evenly across those accounts.
+ */
+public class BenchmarkData {
+
+    /**
+     * The number of accounts the seeded messages are spread across.
+     */
+    public static final int ACCOUNTS = 100;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Resets the database and fills it.
+     *
+     * @param messages the number of messages to insert on top of the sample message
+     */
+    public static void seed(int messages) {
+        ConnectionUtil.resetTestDatabase();
+        AccountDAO accountDAO = new AccountDAO();
+        for (int i = 1; i <= ACCOUNTS; i++) {
+            accountDAO.insertAccount(new Account("benchuser" + i, "password"));
+        }
+        MessageDAO messageDAO = new MessageDAO();
+        List<Message> chunk = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            chunk.add(new Message(accountId(i), "benchmark message number " + i, 1669947792L + i));
+            if (chunk.size() == 1000) {
+                messageDAO.insertMessages(chunk);
+                chunk.clear();
+            }
+        }
+        messageDAO.insertMessages(chunk);
+    }
+
+    /**
+     * @param i any non-negative number
+     * @return the account_id of one of the seeded benchmark accounts
+     */
+    public static int accountId(int i) {
+        // account 1 is testuser1 from SocialMedia.sql; the benchmark accounts follow it
+        return 2 + Math.floorMod(i, ACCOUNTS);
+    }
+}
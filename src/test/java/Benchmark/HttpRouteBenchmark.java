@@ -0,0 +1,153 @@
+package Benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import io.javalin.Javalin;
+
+/**
+ * Measures every SocialMediaController route end to end over HTTP, with the API on port 8080 and the database
+ * seeded at several sizes. The client is java.net.http.HttpClient, as in the functional tests.
+ *
+ *   mvn -P jmh test -Djmh.args="HttpRouteBenchmark -p rows=1000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpRouteBenchmark {
+
+    private static final String BASE = "http://localhost:8080";
+
+    @Param({"100", "1000", "10000"})
+    public int rows;
+
+    private Javalin app;
+    private HttpClient webClient;
+    private final AtomicInteger usernames = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void startServer() {
+        BenchmarkData.seed(rows);
+        app = new SocialMediaController().startAPI().start(8080);
+        webClient = HttpClient.newHttpClient();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        app.stop();
+    }
+
+    private int randomMessageId() {
+        return 2 + ThreadLocalRandom.current().nextInt(rows);
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest request) throws Exception {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder().uri(URI.create(BASE + path)).build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder().uri(URI.create(BASE + path))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> register() throws Exception {
+        return send(post("/register", "{\"username\": \"bench-register-" + usernames.incrementAndGet()
+                + "\", \"password\": \"password\"}"));
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> login() throws Exception {
+        return send(post("/login", "{\"username\": \"benchuser1\", \"password\": \"password\"}"));
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> createMessage() throws Exception {
+        return send(post("/messages", "{\"posted_by\": " + BenchmarkData.accountId(0)
+                + ", \"message_text\": \"hello message\", \"time_posted_epoch\": 1669947792}"));
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> getAllMessages() throws Exception {
+        return send(get("/messages"));
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> getAllMessagesFirstPage() throws Exception {
+        return send(get("/messages?limit=100"));
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> getMessagesByUser() throws Exception {
+        return send(get("/accounts/" + BenchmarkData.accountId(ThreadLocalRandom.current().nextInt()) + "/messages"));
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> getMessageById() throws Exception {
+        return send(get("/messages/" + randomMessageId()));
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> updateMessage() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(BASE + "/messages/" + randomMessageId()))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated text\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return send(request);
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> deleteMessage(DeleteTarget target) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(BASE + "/messages/" + target.messageId))
+                .DELETE()
+                .build();
+        return send(request);
+    }
+
+    /**
+     * Inserts a fresh message before every deleteMessage call, so each call deletes a row that exists.
+     */
+    @State(Scope.Thread)
+    public static class DeleteTarget {
+        private final MessageDAO messageDAO = new MessageDAO();
+        int messageId;
+
+        @Setup(Level.Invocation)
+        public void insert() {
+            Message message = messageDAO.insertMessage(
+                    new Message(BenchmarkData.accountId(0), "to be deleted", 1669947792L));
+            messageId = message.getMessage_id();
+        }
+    }
+}
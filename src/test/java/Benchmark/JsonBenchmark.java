@@ -0,0 +1,123 @@
+package Benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Account;
+import Model.Message;
+import Util.ModelJsonWriter;
+
+/**
+ * Measures Jackson round trips of the Message and Account models, singly and as a list of 100 messages, and the
+ * response path ModelJsonWriter replaced (writeValueAsString, then UTF-8 bytes, as Javalin's ctx.json did) against
+ * ModelJsonWriter itself. Add -prof gc to see the allocation per operation.
+ *
+ *   mvn -P jmh test -Djmh.args="JsonBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TypeReference<List<Message>> messageList = new TypeReference<List<Message>>(){};
+
+    private Message message;
+    private Account account;
+    private List<Message> messages;
+    private byte[] messageJson;
+    private byte[] accountJson;
+    private byte[] messagesJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        message = new Message(1, 1, "test message 1", 1669947792L);
+        account = new Account(1, "testuser1", "password");
+        messages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            messages.add(new Message(i, i % 10, "benchmark message number " + i, 1669947792L + i));
+        }
+        messageJson = objectMapper.writeValueAsBytes(message);
+        accountJson = objectMapper.writeValueAsBytes(account);
+        messagesJson = objectMapper.writeValueAsBytes(messages);
+    }
+
+    @Benchmark
+    public byte[] writeMessage() throws Exception {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public Message readMessage() throws Exception {
+        return objectMapper.readValue(messageJson, Message.class);
+    }
+
+    @Benchmark
+    public byte[] writeAccount() throws Exception {
+        return objectMapper.writeValueAsBytes(account);
+    }
+
+    @Benchmark
+    public Account readAccount() throws Exception {
+        return objectMapper.readValue(accountJson, Account.class);
+    }
+
+    @Benchmark
+    public byte[] writeMessageList() throws Exception {
+        return objectMapper.writeValueAsBytes(messages);
+    }
+
+    @Benchmark
+    public List<Message> readMessageList() throws Exception {
+        return objectMapper.readValue(messagesJson, messageList);
+    }
+
+    @Benchmark
+    public byte[] responseMessageJackson() throws Exception {
+        return objectMapper.writeValueAsString(message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] responseMessageWriter() {
+        return ModelJsonWriter.toJsonBytes(message);
+    }
+
+    @Benchmark
+    public byte[] responseAccountJackson() throws Exception {
+        return objectMapper.writeValueAsString(account).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] responseAccountWriter() {
+        return ModelJsonWriter.toJsonBytes(account);
+    }
+
+    @Benchmark
+    public byte[] responseMessageListJackson() throws Exception {
+        return objectMapper.writeValueAsString(messages).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] responseMessageListWriter() {
+        return ModelJsonWriter.toJsonBytes(messages);
+    }
+}
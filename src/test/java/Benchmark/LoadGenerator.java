@@ -0,0 +1,274 @@
+package Benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import Controller.SocialMediaController;
+import Util.LatencyHistogram;
+import io.javalin.Javalin;
+
+/**
+ * An open-model HTTP load generator for SocialMediaController. It sends a weighted mix of register, login, create,
+ * list, get, patch and delete requests at a fixed target rate, whether or not earlier responses have come back,
+ * and reports latency percentiles per route.
+ *
+ * Every request has an intended start time on the fixed schedule. Latency is recorded twice: from the moment the
+ * request was actually sent (what a naive client sees) and from its intended start time. The second number is
+ * corrected for coordinated omission: when the service stalls, the requests that should have been sent during the
+ * stall are charged for the time they spent waiting, instead of silently disappearing from the results.
+ *
+ * Run it with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=Benchmark.LoadGenerator
+ *       -Dexec.args="rates=100,200,400 duration=30 embedded=true"
+ *
+ * Arguments, all optional, as key=value:
+ *   url       base URL of the service (default http://localhost:8080)
+ *   embedded  start the API in this JVM on port 8080 against a freshly seeded database (default false)
+ *   rows      number of messages to seed when embedded (default 10000)
+ *   rates     comma separated target rates in requests per second; each is run in turn, so a rising list finds
+ *             the saturation point (default 100)
+ *   duration  seconds to run each rate (default 30)
+ *   warmup    seconds to run before measuring each rate (default 5)
+ *   mix       route weights (default register=2,login=8,create=15,list=10,get=45,patch=12,delete=8)
+ *   maxIds    message_id range used by get, patch and delete (default rows + 1)
+ *   maxInFlight  requests allowed outstanding before new ones are counted as dropped (default 10000)
+ */
+public class LoadGenerator {
+
+    private static final String[] ROUTES = {"register", "login", "create", "list", "get", "patch", "delete"};
+
+    private final HttpClient client = HttpClient.newBuilder().executor(Executors.newFixedThreadPool(4)).build();
+    private final String baseUrl;
+    private final int maxIds;
+    private final int maxInFlight;
+    private final String[] schedule;
+    private final AtomicInteger usernames = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public LoadGenerator(String baseUrl, Map<String, Integer> mix, int maxIds, int maxInFlight) {
+        this.baseUrl = baseUrl;
+        this.maxIds = maxIds;
+        this.maxInFlight = maxInFlight;
+        List<String> weighted = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                weighted.add(entry.getKey());
+            }
+        }
+        this.schedule = weighted.toArray(new String[0]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        int rows = Integer.parseInt(options.getOrDefault("rows", "10000"));
+        boolean embedded = Boolean.parseBoolean(options.getOrDefault("embedded", "false"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        Map<String, Integer> mix = parseMix(options.getOrDefault("mix",
+                "register=2,login=8,create=15,list=10,get=45,patch=12,delete=8"));
+
+        Javalin app = null;
+        if (embedded) {
+            BenchmarkData.seed(rows);
+            app = new SocialMediaController().startAPI().start(8080);
+        }
+        try {
+            LoadGenerator generator = new LoadGenerator(options.getOrDefault("url", "http://localhost:8080"), mix,
+                    Integer.parseInt(options.getOrDefault("maxIds", String.valueOf(rows + 1))),
+                    Integer.parseInt(options.getOrDefault("maxInFlight", "10000")));
+            for (String rate : options.getOrDefault("rates", "100").split(",")) {
+                double target = Double.parseDouble(rate.trim());
+                if (warmup > 0) {
+                    generator.run(target, warmup);
+                }
+                generator.run(target, duration).print(target);
+            }
+        } finally {
+            if (app != null) {
+                app.stop();
+            }
+        }
+        System.exit(0);
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] kv = part.split("=");
+            String route = kv[0].trim();
+            if (!List.of(ROUTES).contains(route)) {
+                throw new IllegalArgumentException("unknown route in mix: " + route);
+            }
+            weights.put(route, Integer.parseInt(kv[1].trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * Sends requests on a fixed schedule at the target rate for the given number of seconds, then waits for the
+     * outstanding responses.
+     *
+     * @param ratePerSecond the target request rate
+     * @param seconds how long to keep sending
+     * @return the latencies and counts for this run
+     */
+    public Report run(double ratePerSecond, int seconds) throws InterruptedException {
+        Report report = new Report();
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        for (long i = 0; ; i++) {
+            long intended = start + i * interval;
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            String route = schedule[ThreadLocalRandom.current().nextInt(schedule.length)];
+            RouteStats stats = report.routes.get(route);
+            if (inFlight.get() >= maxInFlight) {
+                stats.dropped.increment();
+                continue;
+            }
+            inFlight.incrementAndGet();
+            long sent = System.nanoTime();
+            client.sendAsync(request(route), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        long done = System.nanoTime();
+                        inFlight.decrementAndGet();
+                        stats.uncorrected.record(done - sent);
+                        stats.corrected.record(done - intended);
+                        if (error != null || response.statusCode() >= 500) {
+                            stats.errors.increment();
+                        }
+                    });
+        }
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private HttpRequest request(String route) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int messageId = 1 + random.nextInt(maxIds);
+        switch (route) {
+            case "register":
+                return post("/register", "{\"username\": \"load-" + System.nanoTime() + "-"
+                        + usernames.incrementAndGet() + "\", \"password\": \"password\"}");
+            case "login":
+                return post("/login", "{\"username\": \"benchuser1\", \"password\": \"password\"}");
+            case "create":
+                return post("/messages", "{\"posted_by\": " + BenchmarkData.accountId(random.nextInt())
+                        + ", \"message_text\": \"load test message\", \"time_posted_epoch\": 1669947792}");
+            case "list":
+                return get("/accounts/" + BenchmarkData.accountId(random.nextInt()) + "/messages");
+            case "get":
+                return get("/messages/" + messageId);
+            case "patch":
+                return HttpRequest.newBuilder().uri(URI.create(baseUrl + "/messages/" + messageId))
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"patched\"}"))
+                        .header("Content-Type", "application/json")
+                        .build();
+            case "delete":
+                return HttpRequest.newBuilder().uri(URI.create(baseUrl + "/messages/" + messageId)).DELETE().build();
+            default:
+                throw new IllegalArgumentException(route);
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder().uri(URI.create(baseUrl + path)).build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder().uri(URI.create(baseUrl + path))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+
+    /**
+     * Per-route results of one run.
+     */
+    public static class Report {
+        private final Map<String, RouteStats> routes = new LinkedHashMap<>();
+        private long elapsedNanos;
+
+        private Report() {
+            for (String route : ROUTES) {
+                routes.put(route, new RouteStats());
+            }
+        }
+
+        private void print(double target) {
+            LatencyHistogram allCorrected = new LatencyHistogram();
+            long errors = 0;
+            long dropped = 0;
+            for (RouteStats stats : routes.values()) {
+                allCorrected.add(stats.corrected);
+                errors += stats.errors.sum();
+                dropped += stats.dropped.sum();
+            }
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf("%n=== target %.0f req/s, achieved %.1f req/s, %d errors, %d dropped ===%n",
+                    target, allCorrected.getCount() / seconds, errors, dropped);
+            System.out.printf("%-9s %8s | %9s %9s %9s %9s %9s | %9s %9s %9s%n", "route", "count",
+                    "p50", "p90", "p99", "p99.9", "max", "raw p50", "raw p99", "raw max");
+            for (Map.Entry<String, RouteStats> entry : routes.entrySet()) {
+                printRow(entry.getKey(), entry.getValue().corrected, entry.getValue().uncorrected);
+            }
+            printRow("all", allCorrected, null);
+            System.out.println("latencies in ms; p* columns are corrected for coordinated omission, raw* are not");
+        }
+
+        private static void printRow(String name, LatencyHistogram corrected, LatencyHistogram raw) {
+            if (corrected.getCount() == 0) {
+                return;
+            }
+            System.out.printf("%-9s %8d | %9.2f %9.2f %9.2f %9.2f %9.2f |", name, corrected.getCount(),
+                    ms(corrected.getPercentile(50)), ms(corrected.getPercentile(90)),
+                    ms(corrected.getPercentile(99)), ms(corrected.getPercentile(99.9)), ms(corrected.getMax()));
+            if (raw != null) {
+                System.out.printf(" %9.2f %9.2f %9.2f", ms(raw.getPercentile(50)), ms(raw.getPercentile(99)),
+                        ms(raw.getMax()));
+            }
+            System.out.println();
+        }
+
+        private static double ms(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+
+    private static class RouteStats {
+        private final LatencyHistogram corrected = new LatencyHistogram();
+        private final LatencyHistogram uncorrected = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+    }
+}
@@ -0,0 +1,98 @@
+package Benchmark;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Model.MessagePage;
+import Service.MessageService;
+
+/**
+ * Measures MessageDAO and AccountDAO operations against a seeded h2 database at several sizes.
+ *
+ *   mvn -P jmh test -Djmh.args="MessageDAOBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageDAOBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    private MessageDAO messageDAO;
+    private AccountDAO accountDAO;
+    private MessageService messageService;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        BenchmarkData.seed(rows);
+        messageDAO = new MessageDAO();
+        accountDAO = new AccountDAO();
+        messageService = new MessageService();
+    }
+
+    private int randomMessageId() {
+        return 2 + ThreadLocalRandom.current().nextInt(rows);
+    }
+
+    @Benchmark
+    public Message getMessageById() {
+        return messageDAO.getMessageById(randomMessageId());
+    }
+
+    @Benchmark
+    public List<Message> getMessagesByUser() {
+        return messageDAO.getMessagesByUser(BenchmarkData.accountId(ThreadLocalRandom.current().nextInt()));
+    }
+
+    @Benchmark
+    public MessagePage getFirstPage() {
+        return messageService.getMessagesPage(null, null, 100);
+    }
+
+    @Benchmark
+    public List<Message> getAllMessages() {
+        return messageDAO.getAllMessages();
+    }
+
+    @Benchmark
+    public Message insertMessage() {
+        return messageDAO.insertMessage(new Message(BenchmarkData.accountId(0), "inserted by a benchmark", 1669947792L));
+    }
+
+    @Benchmark
+    public Message updateMessage() {
+        return messageDAO.updateMessage(randomMessageId(), "updated by a benchmark");
+    }
+
+    @Benchmark
+    public boolean usernameExists() {
+        return accountDAO.usernameExists("benchuser" + (1 + ThreadLocalRandom.current().nextInt(BenchmarkData.ACCOUNTS)));
+    }
+
+    @Benchmark
+    public Account getAccountByCredentials() {
+        return accountDAO.getAccountByCredentials("benchuser1", "password");
+    }
+}
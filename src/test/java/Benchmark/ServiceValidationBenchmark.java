@@ -0,0 +1,90 @@
+package Benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Account;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+
+/**
+ * Measures the validation paths of MessageService and AccountService, which run before any database access.
+ *
+ *   mvn -P jmh test -Djmh.args="ServiceValidationBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceValidationBenchmark {
+
+    private MessageService messageService;
+    private AccountService accountService;
+
+    private Message validMessage;
+    private Message blankMessage;
+    private Message longMessage;
+    private Account validAccount;
+    private Account shortPasswordAccount;
+
+    @Setup
+    public void setUp() {
+        BenchmarkData.seed(0);
+        messageService = new MessageService();
+        accountService = new AccountService();
+        validMessage = new Message(1, "hello message", 1669947792L);
+        blankMessage = new Message(1, "   ", 1669947792L);
+        longMessage = new Message(1, "a".repeat(256), 1669947792L);
+        validAccount = new Account("user", "password");
+        shortPasswordAccount = new Account("user", "pw");
+    }
+
+    @Benchmark
+    public boolean validMessage() {
+        return messageService.isValidMessage(validMessage);
+    }
+
+    @Benchmark
+    public boolean blankMessage() {
+        return messageService.isValidMessage(blankMessage);
+    }
+
+    @Benchmark
+    public boolean tooLongMessage() {
+        return messageService.isValidMessage(longMessage);
+    }
+
+    @Benchmark
+    public boolean rejectedUpdateText() {
+        // returns before reaching the DAO because the text is blank
+        return messageService.updateMessage(1, "") == null;
+    }
+
+    @Benchmark
+    public boolean validAccount() {
+        return accountService.isValidAccount(validAccount);
+    }
+
+    @Benchmark
+    public boolean shortPasswordAccount() {
+        return accountService.isValidAccount(shortPasswordAccount);
+    }
+
+    @Benchmark
+    public boolean usernameRuledOutByBloomFilter() {
+        return accountService.isUsernameTaken("nobody-has-this-name");
+    }
+}
@@ -0,0 +1,113 @@
+package Benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import io.javalin.Javalin;
+import org.eclipse.jetty.util.VirtualThreads;
+
+/**
+ * Compares the "platform" and "virtual" values of socialmedia.server.threads under high concurrency. For each
+ * mode it starts the API on port 8080, sends the same number of requests from many concurrent clients to a route
+ * that blocks on JDBC, and prints throughput and latency percentiles.
+ *
+ * This is a main class rather than a JUnit test so that it never runs as part of mvn test. Run it with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=Benchmark.ThreadModeBenchmark
+ *       -Dexec.args="concurrency requests path"
+ *
+ * The defaults are 1000 clients, 50000 requests per mode and /accounts/1/messages. Add
+ * -Dsocialmedia.db.pool=bounded and -Dsocialmedia.server.maxThreads=... to explore other setups.
+ *
+ * The build targets Java 11, but the virtual mode needs a JDK that has virtual threads at run time (21, or 19 and
+ * 20 with --enable-preview). On any other JDK the virtual run would quietly use platform threads and the comparison
+ * would mean nothing, so the benchmark refuses to start.
+ */
+public class ThreadModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+        String path = args.length > 2 ? args[2] : "/accounts/1/messages";
+        if (!VirtualThreads.areSupported()) {
+            throw new IllegalStateException("Java " + System.getProperty("java.version")
+                    + " has no virtual threads, so both modes would run on platform threads; run on JDK 21 or later");
+        }
+
+        ConnectionUtil.resetTestDatabase();
+        System.out.printf("%-10s %12s %10s %10s %10s %10s %8s%n",
+                "mode", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+        for (String mode : new String[]{"platform", "virtual"}) {
+            System.setProperty("socialmedia.server.threads", mode);
+            Javalin app = new SocialMediaController().startAPI().start(8080);
+            try {
+                run(concurrency, Math.min(requests, 5000), path);
+                Result result = run(concurrency, requests, path);
+                System.out.printf("%-10s %12.0f %10.2f %10.2f %10.2f %10.2f %8d%n", mode,
+                        result.throughput, millis(result.latency.getPercentile(50)),
+                        millis(result.latency.getPercentile(99)), millis(result.latency.getPercentile(99.9)),
+                        millis(result.latency.getMax()), result.errors);
+            } finally {
+                app.stop();
+                System.clearProperty("socialmedia.server.threads");
+            }
+        }
+        System.exit(0);
+    }
+
+    private static Result run(int concurrency, int requests, String path) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder().executor(Executors.newFixedThreadPool(8)).build();
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        AtomicInteger remaining = new AtomicInteger(requests);
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            clients.execute(() -> {
+                while (remaining.getAndDecrement() > 0) {
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() != 200) {
+                            errors.increment();
+                        }
+                    } catch (Exception e) {
+                        errors.increment();
+                    }
+                    latency.recordSince(sent);
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(10, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return new Result(requests / seconds, latency, errors.sum());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static class Result {
+        private final double throughput;
+        private final LatencyHistogram latency;
+        private final long errors;
+
+        private Result(double throughput, LatencyHistogram latency, long errors) {
+            this.throughput = throughput;
+            this.latency = latency;
+            this.errors = errors;
+        }
+    }
+}
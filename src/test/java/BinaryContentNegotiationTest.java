@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import Util.ContentNegotiation;
+import io.javalin.Javalin;
+
+public class BinaryContentNegotiationTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    ObjectMapper cborMapper;
+    ObjectMapper smileMapper;
+    Javalin app;
+
+    private final TypeReference<List<Message>> messageList = new TypeReference<List<Message>>(){};
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and a mapper for
+     * each of JSON, CBOR and Smile.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        cborMapper = new CBORMapper();
+        smileMapper = new SmileMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<byte[]> get(String path, String accept) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (accept != null) {
+            request.header("Accept", accept);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages with Accept: application/cbor, then with Accept: application/x-jackson-smile
+     * for one page of localhost:8080/accounts/1/messages, and for the streamed list
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the same messages as the JSON response, encoded as CBOR or Smile, with a matching Content-Type
+     */
+    @Test
+    public void getMessagesAsCborAndSmile() throws IOException, InterruptedException {
+        HttpResponse<byte[]> json = get("/messages", null);
+        Assert.assertEquals("application/json", json.headers().firstValue("Content-Type").orElseThrow());
+        List<Message> expected = objectMapper.readValue(json.body(), messageList);
+
+        HttpResponse<byte[]> cbor = get("/messages", "application/cbor");
+        Assert.assertEquals(200, cbor.statusCode());
+        Assert.assertEquals(ContentNegotiation.CBOR, cbor.headers().firstValue("Content-Type").orElseThrow());
+        Assert.assertEquals(expected, cborMapper.readValue(cbor.body(), messageList));
+
+        HttpResponse<byte[]> smile = get("/accounts/1/messages?limit=10", "application/x-jackson-smile");
+        Assert.assertEquals(200, smile.statusCode());
+        Assert.assertEquals(ContentNegotiation.SMILE, smile.headers().firstValue("Content-Type").orElseThrow());
+        Assert.assertEquals(expected, smileMapper.readValue(smile.body(), MessagePage.class).getMessages());
+
+        HttpResponse<byte[]> streamed = get("/messages?stream=true", "application/cbor");
+        Assert.assertEquals(200, streamed.statusCode());
+        Assert.assertEquals(ContentNegotiation.CBOR, streamed.headers().firstValue("Content-Type").orElseThrow());
+        Assert.assertEquals(expected, cborMapper.readValue(streamed.body(), messageList));
+    }
+
+    /**
+     * Sending POST localhost:8080/messages with a CBOR body and Accept: application/x-jackson-smile
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the created message, encoded as Smile
+     */
+    @Test
+    public void postMessageAsCbor() throws IOException, InterruptedException {
+        Message message = new Message(1, "binary message", 1669947800L);
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(cborMapper.writeValueAsBytes(message)))
+                .header("Content-Type", "application/cbor")
+                .header("Accept", "application/x-jackson-smile")
+                .build();
+        HttpResponse<byte[]> response = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        Assert.assertEquals(200, response.statusCode());
+        Message created = smileMapper.readValue(response.body(), Message.class);
+        Assert.assertEquals(new Message(2, 1, "binary message", 1669947800L), created);
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 with various Accept headers, and with the JSON ETag in If-None-Match
+     * while asking for CBOR
+     *
+     * Expected Response:
+     *  Status Code: 200, never 304, since a JSON tag does not validate the CBOR representation
+     *  Response Body: JSON unless CBOR or Smile is rated highest
+     */
+    @Test
+    public void negotiateAcceptHeader() throws IOException, InterruptedException {
+        Assert.assertEquals(ContentNegotiation.JSON, get("/messages/1", "*/*").headers()
+                .firstValue("Content-Type").orElseThrow());
+        Assert.assertEquals(ContentNegotiation.JSON, get("/messages/1", "text/html").headers()
+                .firstValue("Content-Type").orElseThrow());
+        Assert.assertEquals(ContentNegotiation.CBOR, get("/messages/1", "application/json;q=0.5, application/cbor")
+                .headers().firstValue("Content-Type").orElseThrow());
+        Assert.assertEquals(ContentNegotiation.SMILE, get("/messages/1", "application/x-jackson-smile, */*;q=0.1")
+                .headers().firstValue("Content-Type").orElseThrow());
+
+        HttpResponse<byte[]> json = get("/messages/1", null);
+        String jsonTag = json.headers().firstValue("ETag").orElseThrow();
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .header("Accept", "application/cbor")
+                .header("If-None-Match", jsonTag)
+                .build();
+        HttpResponse<byte[]> cbor = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        Assert.assertEquals(200, cbor.statusCode());
+        Assert.assertNotEquals(jsonTag, cbor.headers().firstValue("ETag").orElseThrow());
+        Assert.assertEquals("Accept", cbor.headers().firstValue("Vary").orElseThrow());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792L),
+                cborMapper.readValue(cbor.body(), Message.class));
+    }
+}
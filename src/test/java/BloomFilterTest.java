@@ -0,0 +1,40 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.BloomFilter;
+
+public class BloomFilterTest {
+
+    /**
+     * Every added username must be reported as possibly present.
+     */
+    @Test
+    public void addedValuesAreNeverMissed() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("user" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(filter.mightContain("user" + i));
+        }
+        Assert.assertEquals(10000, filter.getInsertionCount());
+    }
+
+    /**
+     * At its expected size, the filter should report absent usernames as absent nearly all of the time.
+     */
+    @Test
+    public void falsePositiveRateIsNearTarget() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("user" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + falsePositives, falsePositives < 300);
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.ResponseCompression;
+import io.javalin.Javalin;
+
+public class CompressMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, create a new webClient, and post fifty more
+     * messages so that the message list is well above the compression threshold.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 50; i++) {
+            batch.append(i == 0 ? "" : ",").append("{\"posted_by\":1, \"message_text\": \"compressible message ")
+                    .append(i).append("\", \"time_posted_epoch\": ").append(1669947800 + i).append("}");
+        }
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(batch.append("]").toString()))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<byte[]> get(String path, String acceptEncoding) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (acceptEncoding != null) {
+            request.header("Accept-Encoding", acceptEncoding);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static byte[] decode(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Sending GET localhost:8080/messages with and without Accept-Encoding: gzip
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: gzip-compressed and smaller, decompressing to exactly the uncompressed body
+     */
+    @Test
+    public void getAllMessagesGzip() throws IOException, InterruptedException {
+        HttpResponse<byte[]> plain = get("/messages", null);
+        Assert.assertTrue(plain.headers().firstValue("Content-Encoding").isEmpty());
+
+        HttpResponse<byte[]> response = get("/messages", "gzip, deflate");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElseThrow());
+        Assert.assertEquals("Accept, Accept-Encoding", response.headers().firstValue("Vary").orElseThrow());
+        Assert.assertTrue(response.body().length < plain.body().length);
+        Assert.assertArrayEquals(plain.body(),
+                decode(new GZIPInputStream(new ByteArrayInputStream(response.body()))));
+    }
+
+    /**
+     * Sending GET localhost:8080/accounts/1/messages with Accept-Encoding: gzip;q=0, deflate
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: deflate-compressed, decompressing to exactly the uncompressed body
+     */
+    @Test
+    public void getMessagesByUserDeflate() throws IOException, InterruptedException {
+        HttpResponse<byte[]> plain = get("/accounts/1/messages", null);
+        HttpResponse<byte[]> response = get("/accounts/1/messages", "gzip;q=0, deflate");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("deflate", response.headers().firstValue("Content-Encoding").orElseThrow());
+        Assert.assertArrayEquals(plain.body(),
+                decode(new InflaterInputStream(new ByteArrayInputStream(response.body()))));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages?stream=true with Accept-Encoding: gzip
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the streamed list, gzip-compressed on the fly
+     */
+    @Test
+    public void streamedMessagesGzip() throws IOException, InterruptedException {
+        HttpResponse<byte[]> plain = get("/messages?stream=true", null);
+        HttpResponse<byte[]> response = get("/messages?stream=true", "gzip");
+        Assert.assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElseThrow());
+        Assert.assertArrayEquals(plain.body(),
+                decode(new GZIPInputStream(new ByteArrayInputStream(response.body()))));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 with Accept-Encoding: gzip
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the single message uncompressed, since it is below the size threshold
+     */
+    @Test
+    public void smallResponseNotCompressed() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = get("/messages/1", "gzip");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Encoding").isEmpty());
+        Assert.assertTrue(new String(response.body()).contains("\"message_id\":1"));
+    }
+
+    /**
+     * Accept-Encoding negotiation honours q-values, wildcards and the server's order of preference
+     */
+    @Test
+    public void negotiateEncoding() {
+        ResponseCompression compression = new ResponseCompression(List.of("gzip", "deflate"), 0, 6);
+        Assert.assertEquals("gzip", compression.negotiate("deflate, gzip"));
+        Assert.assertEquals("deflate", compression.negotiate("gzip;q=0.5, deflate"));
+        Assert.assertEquals("deflate", compression.negotiate("gzip;q=0, *"));
+        Assert.assertEquals("gzip", compression.negotiate("*"));
+        Assert.assertNull(compression.negotiate("br, identity"));
+        Assert.assertNull(compression.negotiate(null));
+        Assert.assertNull(new ResponseCompression(List.of(), 0, 6).negotiate("gzip"));
+    }
+}
@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void patch(int messageId, String text) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"" + text + "\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages twice, the second time with If-None-Match set to the first ETag
+     *
+     * Expected Response:
+     *  Status Code: 200 with a weak ETag, then 304 with an empty body
+     */
+    @Test
+    public void getAllMessagesNotModified() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+        Assert.assertTrue(etag.startsWith("W/\""));
+
+        HttpResponse<String> second = get("/messages", etag);
+        Assert.assertEquals(304, second.statusCode());
+        Assert.assertEquals("", second.body());
+        Assert.assertEquals(etag, second.headers().firstValue("ETag").orElseThrow());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages with a stale ETag after a message was changed
+     *
+     * Expected Response:
+     *  Status Code: 200 with the new text and a different ETag
+     */
+    @Test
+    public void getAllMessagesModifiedAfterUpdate() throws IOException, InterruptedException {
+        String etag = get("/messages", null).headers().firstValue("ETag").orElseThrow();
+        patch(1, "updated message");
+
+        HttpResponse<String> response = get("/messages", etag);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().contains("updated message"));
+        Assert.assertNotEquals(etag, response.headers().firstValue("ETag").orElseThrow());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 with its ETag before and after it is updated, and GET
+     * localhost:8080/accounts/1/messages with If-None-Match: *
+     *
+     * Expected Response:
+     *  Status Code: 304 while unchanged, 200 once updated, 304 for the wildcard
+     */
+    @Test
+    public void getMessageByIdConditional() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages/1", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        Assert.assertEquals(304, get("/messages/1", "\"other\", " + etag).statusCode());
+
+        patch(1, "updated message");
+        HttpResponse<String> changed = get("/messages/1", etag);
+        Assert.assertEquals(200, changed.statusCode());
+        Assert.assertTrue(changed.body().contains("updated message"));
+
+        Assert.assertEquals(304, get("/accounts/1/messages", "*").statusCode());
+    }
+}
@@ -0,0 +1,124 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    ConnectionPool pool;
+
+    /**
+     * Before every test, create a small pool over a private in-memory database.
+     */
+    @Before
+    public void setUp() {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+        h2.setPassword("sa");
+        pool = new ConnectionPool(h2, 0, 2, 200, 60000, true);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    /**
+     * Closing a borrowed connection should return the same physical connection to the pool rather than opening a
+     * new one on the next borrow.
+     */
+    @Test
+    public void closedConnectionsAreReused() throws SQLException {
+        Connection first = pool.getConnection();
+        Assert.assertEquals(1, pool.getActiveCount());
+        first.close();
+        Assert.assertTrue(first.isClosed());
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        Connection second = pool.getConnection();
+        second.close();
+        Assert.assertEquals(1, pool.getCreatedCount());
+        Assert.assertEquals(2, pool.getBorrowLatency().getCount());
+    }
+
+    /**
+     * Once maxSize connections are on loan, the next borrower should give up after the borrow timeout.
+     */
+    @Test
+    public void exhaustedPoolTimesOut() throws SQLException {
+        Connection a = pool.getConnection();
+        Connection b = pool.getConnection();
+        try {
+            pool.getConnection();
+            Assert.fail("expected the borrow to time out");
+        } catch (SQLTransientConnectionException expected) {
+            Assert.assertEquals(1, pool.getBorrowTimeoutCount());
+        } finally {
+            a.close();
+            b.close();
+        }
+        Assert.assertEquals(2, pool.getIdleCount());
+    }
+
+    /**
+     * A connection that died while idle should fail validation and be replaced on the next borrow.
+     */
+    @Test
+    public void brokenIdleConnectionIsReplaced() throws SQLException {
+        Connection conn = pool.getConnection();
+        Connection physical = conn.unwrap(Connection.class);
+        conn.close();
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        physical.close();
+        Connection fresh = pool.getConnection();
+        try (Statement stmt = fresh.createStatement()) {
+            Assert.assertTrue(stmt.execute("SELECT 1"));
+        }
+        fresh.close();
+        Assert.assertEquals(1, pool.getValidationFailureCount());
+        Assert.assertEquals(2, pool.getCreatedCount());
+        Assert.assertEquals(1, pool.getTotalCount());
+    }
+
+    /**
+     * Settings a borrower changed should not leak to the next borrower of the same physical connection.
+     */
+    @Test
+    public void returnedConnectionIsReset() throws SQLException {
+        Connection conn = pool.getConnection();
+        int isolation = conn.getTransactionIsolation();
+        conn.setAutoCommit(false);
+        conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        conn.close();
+
+        Connection next = pool.getConnection();
+        try {
+            Assert.assertEquals(1, pool.getCreatedCount());
+            Assert.assertTrue(next.getAutoCommit());
+            Assert.assertEquals(isolation, next.getTransactionIsolation());
+            Assert.assertFalse(next.isReadOnly());
+        } finally {
+            next.close();
+        }
+    }
+
+    /**
+     * A borrowed connection must not be usable after it has been given back.
+     */
+    @Test(expected = SQLException.class)
+    public void connectionIsUnusableAfterClose() throws SQLException {
+        Connection conn = pool.getConnection();
+        conn.close();
+        conn.createStatement();
+    }
+}
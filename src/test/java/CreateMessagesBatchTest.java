@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.BatchResult;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CreateMessagesBatchTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with two valid messages, one blank message and
+     * one message from a user that doesnt exist in db
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one result per item; the valid messages get consecutive generated IDs
+     */
+    @Test
+    public void createMessagesBatchMixed() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[" +
+                        "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947793}," +
+                        "{\"posted_by\":1, \"message_text\": \"\", \"time_posted_epoch\": 1669947794}," +
+                        "{\"posted_by\":3, \"message_text\": \"nobody\", \"time_posted_epoch\": 1669947795}," +
+                        "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947796}]"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        List<BatchResult> results = objectMapper.readValue(response.body(), new TypeReference<List<BatchResult>>(){});
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals(200, results.get(0).getStatus());
+        Assert.assertEquals(new Message(2, 1, "first", 1669947793), results.get(0).getMessage());
+        Assert.assertEquals(400, results.get(1).getStatus());
+        Assert.assertNull(results.get(1).getMessage());
+        Assert.assertEquals(400, results.get(2).getStatus());
+        Assert.assertEquals(200, results.get(3).getStatus());
+        Assert.assertEquals(new Message(3, 1, "second", 1669947796), results.get(3).getMessage());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/3"))
+                .build();
+        HttpResponse<String> stored = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(new Message(3, 1, "second", 1669947796), objectMapper.readValue(stored.body(), Message.class));
+    }
+}
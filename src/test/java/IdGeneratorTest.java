@@ -0,0 +1,55 @@
+import java.io.FileReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.h2.tools.RunScript;
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.IntIdGenerator;
+
+public class IdGeneratorTest {
+
+    /**
+     * Each node of an int generator hands out its own residue class above the seed, one at a time or a batch at
+     * once, and refuses to wrap around past the int range.
+     */
+    @Test
+    public void intIdsStrideByNodeTest() {
+        IntIdGenerator node0 = new IntIdGenerator(10, 0, 3);
+        IntIdGenerator node2 = new IntIdGenerator(10, 2, 3);
+        Assert.assertEquals(12, node0.nextId());
+        Assert.assertEquals(14, node2.nextId());
+        Assert.assertArrayEquals(new int[]{15, 18, 21}, node0.nextIds(3));
+        Assert.assertEquals(24, node0.nextId());
+
+        IntIdGenerator full = new IntIdGenerator(Integer.MAX_VALUE - 1, 0, 1);
+        Assert.assertEquals(Integer.MAX_VALUE, full.nextId());
+        Assert.assertThrows(IllegalStateException.class, full::nextId);
+    }
+
+    /**
+     * A generator seeded from the message table hands out IDs the identity column accepts as explicit values.
+     */
+    @Test
+    public void seededIdsInsertIntoTableTest() throws Exception {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:idgenerator");
+        try (Connection conn = h2.getConnection()) {
+            RunScript.execute(conn, new FileReader("src/main/resources/SocialMedia.sql"));
+            IntIdGenerator ids = IntIdGenerator.seededFrom(conn, "message", "message_id");
+            Set<Integer> inserted = new HashSet<>();
+            PreparedStatement ps = conn.prepareStatement("INSERT INTO message "
+                    + "(message_id, posted_by, message_text, time_posted_epoch) VALUES (?, 1, 'app id', 0)");
+            for (int id : ids.nextIds(5)) {
+                ps.setInt(1, id);
+                ps.executeUpdate();
+                inserted.add(id);
+            }
+            Assert.assertEquals(Set.of(2, 3, 4, 5, 6), inserted);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.InMemoryMessageStore;
+import Model.Message;
+import Util.PageCursor;
+
+public class InMemoryMessageStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Path snapshot;
+    InMemoryMessageStore store;
+
+    /**
+     * Before every test, create an empty store over a fresh snapshot file in which accounts 1 to 3 exist.
+     */
+    @Before
+    public void setUp() {
+        snapshot = folder.getRoot().toPath().resolve("messages.snapshot");
+        store = new InMemoryMessageStore(snapshot, accountId -> accountId >= 1 && accountId <= 3);
+    }
+
+    /**
+     * Messages are created, read, updated and deleted by ID, and the per-user index follows every change. Unknown
+     * accounts are refused.
+     */
+    @Test
+    public void crudAndUserIndexTest() {
+        Message first = store.insertMessage(new Message(1, "hello", 1669947792L));
+        Message second = store.insertMessage(new Message(2, "world", 1669947793L));
+        Assert.assertEquals(new Message(1, 1, "hello", 1669947792L), first);
+        Assert.assertEquals(2, second.getMessage_id());
+        Assert.assertNull(store.insertMessage(new Message(9, "nobody", 1669947794L)));
+
+        Assert.assertEquals(first, store.updateMessage(1, "changed"));
+        Assert.assertEquals(new Message(1, 1, "changed", 1669947792L), store.getMessageById(1));
+        Assert.assertNull(store.updateMessage(7, "missing"));
+
+        Assert.assertEquals(List.of(second), store.getMessagesByUser(2));
+        Assert.assertEquals(second, store.deleteMessage(2));
+        Assert.assertTrue(store.getMessagesByUser(2).isEmpty());
+        Assert.assertNull(store.getMessageById(2));
+        Assert.assertEquals(1, store.size());
+
+        Message[] batch = store.insertMessages(List.of(new Message(3, "a", 1L), new Message(8, "b", 2L)));
+        Assert.assertEquals(3, batch[0].getMessage_id());
+        Assert.assertNull(batch[1]);
+    }
+
+    /**
+     * Lists come back in message_id order, pages in (time_posted_epoch, message_id) order from the cursor on.
+     */
+    @Test
+    public void orderingAndPagingTest() {
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            batch.add(new Message(1 + i % 3, "message " + i, 1000L + (i * 7) % 20));
+        }
+        store.insertMessages(batch);
+
+        List<Message> all = store.getAllMessages();
+        Assert.assertEquals(20, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            Assert.assertEquals(i + 1, all.get(i).getMessage_id());
+        }
+        List<Message> streamed = new ArrayList<>();
+        store.forEachMessage(null, streamed::add);
+        Assert.assertEquals(all, streamed);
+
+        List<Message> firstPage = store.getMessagesPage(null, null, 8);
+        List<Message> secondPage = store.getMessagesPage(null, new PageCursor(
+                firstPage.get(7).getTime_posted_epoch(), firstPage.get(7).getMessage_id()), 100);
+        Assert.assertEquals(8, firstPage.size());
+        Assert.assertEquals(12, secondPage.size());
+        List<Message> paged = new ArrayList<>(firstPage);
+        paged.addAll(secondPage);
+        for (int i = 1; i < paged.size(); i++) {
+            Assert.assertTrue(paged.get(i - 1).getTime_posted_epoch() < paged.get(i).getTime_posted_epoch());
+        }
+        Assert.assertEquals(3, store.getMessagesByIds(new int[]{5, 1, 5, 99, 20}).size());
+    }
+
+    /**
+     * A snapshot restores every message and the next ID into a new store.
+     */
+    @Test
+    public void snapshotAndRestoreTest() {
+        store.insertMessage(new Message(1, "kept", 1669947792L));
+        store.insertMessage(new Message(2, "deleted", 1669947793L));
+        store.insertMessage(new Message(3, "updated", 1669947794L));
+        store.deleteMessage(2);
+        store.updateMessage(3, "after update");
+        Assert.assertTrue(store.snapshot());
+
+        InMemoryMessageStore restored = new InMemoryMessageStore(snapshot, accountId -> true);
+        Assert.assertTrue(restored.isRestored());
+        Assert.assertEquals(store.getAllMessages(), restored.getAllMessages());
+        Assert.assertEquals(4, restored.insertMessage(new Message(1, "next", 1669947795L)).getMessage_id());
+    }
+
+    /**
+     * A snapshot file that is there but unreadable stops startup instead of leaving the store empty.
+     */
+    @Test
+    public void unreadableSnapshotFailsStartupTest() throws Exception {
+        store.insertMessage(new Message(1, "kept", 1669947792L));
+        Assert.assertTrue(store.snapshot());
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Files.write(snapshot, Arrays.copyOf(bytes, bytes.length - 4));
+
+        try {
+            new InMemoryMessageStore(snapshot, accountId -> true);
+            Assert.fail("a truncated snapshot was accepted");
+        } catch (UncheckedIOException expected) {
+        }
+    }
+
+    /**
+     * Snapshots taken from many threads at once never interleave in the temporary file.
+     */
+    @Test
+    public void concurrentSnapshotsTest() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            store.insertMessage(new Message(1 + i % 3, "message " + i, 1669947792L + i));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            results.add(pool.submit(store::snapshot));
+        }
+        for (Future<Boolean> result : results) {
+            Assert.assertTrue(result.get());
+        }
+        pool.shutdown();
+
+        InMemoryMessageStore restored = new InMemoryMessageStore(snapshot, accountId -> true);
+        Assert.assertEquals(store.getAllMessages(), restored.getAllMessages());
+    }
+}
@@ -0,0 +1,38 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.IntHashMap;
+
+public class IntHashMapTest {
+
+    /**
+     * A long random mix of puts and removes, over a key range small enough to collide constantly, must leave the
+     * map agreeing with a HashMap on every key.
+     */
+    @Test
+    public void agreesWithHashMapUnderRandomChurn() {
+        IntHashMap<Integer> map = new IntHashMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(5000) - 2500;
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                Assert.assertEquals(expected.put(key, i), map.put(key, i));
+            }
+        }
+        Assert.assertEquals(expected.size(), map.size());
+        for (int key = -2500; key < 2500; key++) {
+            Assert.assertEquals(expected.get(key), map.get(key));
+        }
+        int[] keys = map.keys();
+        Arrays.sort(keys);
+        Assert.assertArrayEquals(expected.keySet().stream().mapToInt(Integer::intValue).sorted().toArray(), keys);
+    }
+}
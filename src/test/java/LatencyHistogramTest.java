@@ -0,0 +1,52 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+    /**
+     * Percentiles of a uniform 1..100000 distribution should come back within the 3% bucket resolution.
+     */
+    @Test
+    public void percentilesAreWithinBucketResolution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i);
+        }
+        Assert.assertEquals(100000, histogram.getCount());
+        Assert.assertEquals(100000, histogram.getMax());
+        Assert.assertEquals(50000, histogram.getPercentile(50), 50000 * 0.04);
+        Assert.assertEquals(99000, histogram.getPercentile(99), 99000 * 0.04);
+        Assert.assertEquals(100000, histogram.getPercentile(100));
+        Assert.assertEquals(50000.5, histogram.getMean(), 0.001);
+    }
+
+    /**
+     * Small values are tracked exactly, and merged histograms add up.
+     */
+    @Test
+    public void smallValuesAreExactAndMergesAddUp() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(3);
+        b.record(7);
+        b.record(-5);
+        a.add(b);
+        Assert.assertEquals(3, a.getCount());
+        Assert.assertEquals(0, a.getPercentile(1));
+        Assert.assertEquals(7, a.getPercentile(100));
+        Assert.assertEquals(2, a.countAtOrBelow(3));
+    }
+
+    /**
+     * Values beyond the trackable range are clamped instead of failing.
+     */
+    @Test
+    public void hugeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals(LatencyHistogram.MAX_TRACKABLE_NANOS, histogram.getMax());
+        Assert.assertEquals(LatencyHistogram.MAX_TRACKABLE_NANOS, histogram.getPercentile(99));
+    }
+}
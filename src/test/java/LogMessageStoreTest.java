@@ -0,0 +1,123 @@
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.LogMessageStore;
+import Model.Message;
+
+public class LogMessageStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Path directory;
+    LogMessageStore store;
+
+    /**
+     * Before every test, open an empty log with small segments in which accounts 1 to 3 exist.
+     */
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath().resolve("log");
+        store = open();
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    private LogMessageStore open() {
+        return new LogMessageStore(directory, 4096, false, accountId -> accountId >= 1 && accountId <= 3);
+    }
+
+    /**
+     * Inserts, updates and deletes are replayed from the segment files by a new store, which carries on numbering
+     * after the highest ID ever handed out.
+     */
+    @Test
+    public void replaysLogOnOpenTest() {
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            batch.add(new Message(1 + i % 3, "message number " + i, 1669947792L + i));
+        }
+        store.insertMessages(batch);
+        store.updateMessage(5, "updated five");
+        store.deleteMessage(100);
+        Assert.assertNull(store.insertMessage(new Message(7, "no such account", 1669947792L)));
+        Assert.assertTrue(store.getSegmentCount() > 1);
+        List<Message> before = store.getAllMessages();
+        store.close();
+
+        store = open();
+        Assert.assertTrue(store.isRecovered());
+        Assert.assertEquals(before, store.getAllMessages());
+        Assert.assertEquals("updated five", store.getMessageById(5).getMessage_text());
+        Assert.assertNull(store.getMessageById(100));
+        Assert.assertEquals(33, store.getMessagesByUser(2).size());
+        Assert.assertEquals(101, store.insertMessage(new Message(1, "after reopen", 1669947999L)).getMessage_id());
+    }
+
+    /**
+     * A record cut off in the middle of its write is ignored on replay, and everything before it survives.
+     */
+    @Test
+    public void ignoresTornRecordTest() throws Exception {
+        store.insertMessage(new Message(1, "complete", 1669947792L));
+        store.insertMessage(new Message(1, "torn", 1669947793L));
+        store.close();
+
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.collect(Collectors.toList()).get(0);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            // flip a byte in the text of the second record, so its checksum no longer matches
+            int first = 12 + 8 + 19 + "complete".length();
+            file.seek(first + 8 + 19);
+            file.write('X');
+        }
+
+        store = open();
+        Assert.assertEquals(1, store.size());
+        Assert.assertEquals("complete", store.getMessageById(1).getMessage_text());
+    }
+
+    /**
+     * Compaction moves the live records out of sealed segments and deletes them, keeping every message readable
+     * and deleted messages gone, also after a reopen.
+     */
+    @Test
+    public void compactionReclaimsSegmentsTest() {
+        for (int i = 0; i < 200; i++) {
+            store.insertMessage(new Message(1, "message number " + i, 1669947792L + i));
+        }
+        for (int i = 1; i <= 200; i++) {
+            if (i % 10 != 0) {
+                store.deleteMessage(i);
+            }
+        }
+        int segmentsBefore = store.getSegmentCount();
+        List<Message> before = store.getAllMessages();
+        Assert.assertEquals(20, before.size());
+
+        Assert.assertTrue(store.compact(0.5) > 0);
+        Assert.assertTrue(store.getSegmentCount() < segmentsBefore);
+        Assert.assertEquals(before, store.getAllMessages());
+        store.close();
+
+        store = open();
+        Assert.assertEquals(before, store.getAllMessages());
+        Assert.assertNull(store.getMessageById(1));
+    }
+}
@@ -0,0 +1,86 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Model.Message;
+import Service.MessageCache;
+
+public class MessageCacheTest {
+
+    /**
+     * A cached message should be served until it is invalidated, and hits and misses should be counted.
+     */
+    @Test
+    public void cachedMessageIsServedUntilInvalidated() {
+        MessageCache cache = new MessageCache(10, 60000);
+        Message message = new Message(1, 1, "test message 1", 1669947792);
+
+        Assert.assertNull(cache.get(1));
+        cache.putIfUnchanged(message, cache.generation());
+        Assert.assertEquals(message, cache.get(1));
+
+        cache.invalidate(1);
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    /**
+     * A row loaded before an invalidation must not be cached after it, or readers would see the old text.
+     */
+    @Test
+    public void loadRacingAnInvalidationIsNotCached() {
+        MessageCache cache = new MessageCache(10, 60000);
+        long generation = cache.generation();
+        cache.invalidate(1);
+        cache.putIfUnchanged(new Message(1, 1, "old text", 1669947792), generation);
+        Assert.assertNull(cache.get(1));
+    }
+
+    /**
+     * Once the cache is full, the least recently used message should be evicted.
+     */
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        MessageCache cache = new MessageCache(2, 60000);
+        cache.putIfUnchanged(new Message(1, 1, "one", 1), cache.generation());
+        cache.putIfUnchanged(new Message(2, 1, "two", 2), cache.generation());
+        cache.get(1);
+        cache.putIfUnchanged(new Message(3, 1, "three", 3), cache.generation());
+
+        Assert.assertNotNull(cache.get(1));
+        Assert.assertNull(cache.get(2));
+        Assert.assertNotNull(cache.get(3));
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    /**
+     * A cache large enough to be split into segments must still hold no more than maxSize messages in all, and
+     * keep the ones used since they were put.
+     */
+    @Test
+    public void segmentedCacheStaysWithinMaxSize() {
+        MessageCache cache = new MessageCache(1000, 60000);
+        for (int id = 1; id <= 5000; id++) {
+            cache.putIfUnchanged(new Message(id, 1, "message " + id, id), cache.generation());
+            if (id > 1) {
+                cache.get(1);
+            }
+        }
+        Assert.assertTrue(String.valueOf(cache.size()), cache.size() <= 1000);
+        Assert.assertEquals(5000 - cache.size(), cache.getEvictionCount());
+        Assert.assertNotNull(cache.get(1));
+        Assert.assertNotNull(cache.get(5000));
+    }
+
+    /**
+     * An entry older than the time-to-live should not be served.
+     */
+    @Test
+    public void expiredEntryIsNotServed() throws InterruptedException {
+        MessageCache cache = new MessageCache(10, 10);
+        cache.putIfUnchanged(new Message(1, 1, "one", 1), cache.generation());
+        Thread.sleep(50);
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageEvent;
+import Service.MessageFeed;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageFeedTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private String nextEvent(BlockingQueue<String> lines) throws InterruptedException {
+        StringBuilder event = new StringBuilder();
+        while (true) {
+            String line = lines.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull("timed out waiting for an event", line);
+            if (line.isEmpty()) {
+                if (event.length() > 0) {
+                    return event.toString();
+                }
+            } else if (!line.startsWith(":")) {
+                event.append(line).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Subscribing to GET localhost:8080/messages/feed?posted_by=1, then creating, updating and deleting a message
+     *
+     * Expected Response:
+     *  Status Code: 200, Content-Type text/event-stream
+     *  Response Body: a created, an updated and a deleted event, each with the message JSON as data
+     */
+    @Test
+    public void feedStreamsChanges() throws IOException, InterruptedException {
+        HttpRequest feedRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/feed?posted_by=1"))
+                .header("Accept", "text/event-stream")
+                .build();
+        HttpResponse<Stream<String>> feed = webClient.send(feedRequest, HttpResponse.BodyHandlers.ofLines());
+        Assert.assertEquals(200, feed.statusCode());
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(() -> feed.body().forEach(lines::add));
+        reader.setDaemon(true);
+        reader.start();
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, " +
+                        "\"message_text\": \"live message\", \"time_posted_epoch\": 1669947800}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"edited\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .DELETE()
+                .build();
+        webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+
+        String created = nextEvent(lines);
+        Assert.assertTrue(created, created.contains("event: created\n"));
+        Assert.assertTrue(created, created.contains("data: {\"message_id\":2,\"posted_by\":1,"
+                + "\"message_text\":\"live message\",\"time_posted_epoch\":1669947800}\n"));
+        String updated = nextEvent(lines);
+        Assert.assertTrue(updated, updated.contains("event: updated\n"));
+        Assert.assertTrue(updated, updated.contains("\"message_text\":\"edited\""));
+        String deleted = nextEvent(lines);
+        Assert.assertTrue(deleted, deleted.contains("event: deleted\n"));
+        Assert.assertTrue(deleted, deleted.contains("\"message_id\":2"));
+    }
+
+    /**
+     * Only events for the subscribed posted_by are delivered
+     */
+    @Test
+    public void feedFiltersByPostedBy() throws InterruptedException {
+        MessageFeed feed = new MessageFeed(16, 0);
+        BlockingQueue<MessageEvent> received = new LinkedBlockingQueue<>();
+        feed.subscribe(2, received::add, () -> { });
+        feed.publish(MessageEvent.CREATED, new Message(1, 1, "not for us", 0));
+        feed.publish(MessageEvent.CREATED, new Message(2, 2, "for us", 0));
+
+        MessageEvent event = received.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(event);
+        Assert.assertEquals(2, event.getMessage().getMessage_id());
+        Assert.assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * A subscriber whose sink is stuck is dropped once its buffer overflows, while a subscriber that keeps up
+     * receives every event in order
+     */
+    @Test
+    public void slowSubscriberIsDropped() throws InterruptedException {
+        MessageFeed feed = new MessageFeed(4, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch dropped = new CountDownLatch(1);
+        AtomicBoolean slowDropped = new AtomicBoolean();
+        feed.subscribe(null, event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, () -> {
+            slowDropped.set(true);
+            dropped.countDown();
+        });
+        List<MessageEvent> fast = new ArrayList<>();
+        Semaphore fastReceived = new Semaphore(0);
+        feed.subscribe(null, event -> {
+            synchronized (fast) {
+                fast.add(event);
+            }
+            fastReceived.release();
+        }, () -> { });
+
+        for (int i = 1; i <= 20; i++) {
+            feed.publish(MessageEvent.CREATED, new Message(i, 1, "message " + i, 0));
+            Assert.assertTrue(fastReceived.tryAcquire(5, TimeUnit.SECONDS));
+        }
+        Assert.assertTrue(dropped.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(slowDropped.get());
+        Assert.assertEquals(1, feed.getSubscriberCount());
+        Assert.assertEquals(1, feed.getDroppedCount());
+        synchronized (fast) {
+            Assert.assertEquals(20, fast.size());
+            for (int i = 0; i < 20; i++) {
+                Assert.assertEquals(i + 1, fast.get(i).getId());
+            }
+        }
+        release.countDown();
+    }
+
+    /**
+     * More stuck subscribers than there are delivery threads are all still dropped once their buffers overflow,
+     * since the disconnect does not wait for a delivery thread
+     */
+    @Test
+    public void stuckSubscribersAreDroppedWhenEveryDeliveryThreadIsBusy() throws InterruptedException {
+        MessageFeed feed = new MessageFeed(2, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch dropped = new CountDownLatch(40);
+        for (int i = 0; i < 40; i++) {
+            feed.subscribe(null, event -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, dropped::countDown);
+        }
+        for (int i = 1; i <= 5; i++) {
+            feed.publish(MessageEvent.CREATED, new Message(i, 1, "message " + i, 0));
+        }
+        Assert.assertTrue(dropped.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, feed.getSubscriberCount());
+        Assert.assertEquals(40, feed.getDroppedCount());
+        release.countDown();
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import DAO.InMemoryMessageStore;
+import Model.Message;
+import Service.MessageWriteBehind;
+
+public class MessageWriteBehindTest {
+
+    /**
+     * An Error thrown by a group commit should fail that group's futures and leave the writer running.
+     */
+    @Test
+    public void errorInCommitFailsTheGroupOnly() throws Exception {
+        InMemoryMessageStore store = new InMemoryMessageStore(null, accountId -> {
+            if (accountId == 99) {
+                throw new AssertionError("account lookup blew up");
+            }
+            return true;
+        });
+        MessageWriteBehind writeBehind = new MessageWriteBehind(store, 100, 10, 1);
+        try {
+            CompletableFuture<Message> broken = writeBehind.submit(new Message(99, "broken", 1669947792L));
+            try {
+                broken.get(5, TimeUnit.SECONDS);
+                Assert.fail("the failed commit completed normally");
+            } catch (ExecutionException expected) {
+                Assert.assertTrue(expected.getCause().getCause() instanceof AssertionError);
+            }
+            Assert.assertEquals(1, writeBehind.getFailedCount());
+
+            Message next = writeBehind.submit(new Message(1, "next", 1669947793L)).get(5, TimeUnit.SECONDS);
+            Assert.assertEquals("next", next.getMessage_text());
+        } finally {
+            writeBehind.shutdown();
+        }
+    }
+
+    /**
+     * Every message submit() accepts while shutdown() runs should still be written: none may be left behind in the
+     * queue after the writer has exited.
+     */
+    @Test
+    public void submitRacingShutdownNeverHangs() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            InMemoryMessageStore store = new InMemoryMessageStore(null, accountId -> true);
+            MessageWriteBehind writeBehind = new MessageWriteBehind(store, 100000, 16, 0);
+            List<CompletableFuture<Message>> accepted = new ArrayList<>();
+            Thread submitter = new Thread(() -> {
+                try {
+                    while (true) {
+                        accepted.add(writeBehind.submit(new Message(1, "racing", 1669947792L)));
+                    }
+                } catch (RejectedExecutionException shutDown) {
+                }
+            });
+            submitter.start();
+            Thread.sleep(1);
+            writeBehind.shutdown();
+            submitter.join();
+
+            for (CompletableFuture<Message> future : accepted) {
+                Assert.assertNotNull(future.get(5, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals(accepted.size(), store.size());
+        }
+    }
+}
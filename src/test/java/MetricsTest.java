@@ -0,0 +1,72 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 and then to GET localhost:8080/metrics
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text including the request under its route template and the DAO call behind it
+     */
+    @Test
+    public void metricsIncludeRoutesAndDaoCalls() throws IOException, InterruptedException {
+        HttpRequest getMessage = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        webClient.send(getMessage, HttpResponse.BodyHandlers.ofString());
+
+        HttpRequest getMetrics = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        HttpResponse<String> response = webClient.send(getMetrics, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+
+        String body = response.body();
+        Assert.assertTrue(body, body.contains(
+                "http_requests_total{method=\"GET\",route=\"/messages/{message_id}\",status=\"200\"} "));
+        Assert.assertTrue(body, body.contains(
+                "http_request_duration_seconds_bucket{method=\"GET\",route=\"/messages/{message_id}\",le=\"+Inf\"} "));
+        Assert.assertTrue(body, body.contains(
+                "db_operation_duration_seconds_count{operation=\"MessageDAO.getMessageById\"} "));
+        Assert.assertTrue(body, body.contains("db_errors_total{operation=\"MessageDAO.getMessageById\"} 0"));
+        Assert.assertTrue(body, body.contains("message_cache_misses_total "));
+    }
+}
@@ -0,0 +1,115 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Account;
+import Model.AccountStats;
+import Model.Message;
+import Model.MessagePage;
+import Util.ModelJsonMapper;
+import Util.ModelJsonWriter;
+import io.javalin.json.JavalinJackson;
+
+public class ModelJsonWriterTest {
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * What a response body held before ModelJsonWriter: Javalin sent ctx.json(value) as the UTF-8 bytes of
+     * ObjectMapper.writeValueAsString.
+     */
+    private byte[] jackson(Object value) throws Exception {
+        return objectMapper.writeValueAsString(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void assertSameBytes(Object value) throws Exception {
+        byte[] expected = jackson(value);
+        byte[] actual = ModelJsonWriter.toJsonBytes(value);
+        if (!Arrays.equals(expected, actual)) {
+            // show the difference as text first, which is far easier to read than two byte arrays
+            Assert.assertEquals(new String(expected, StandardCharsets.UTF_8),
+                    new String(actual, StandardCharsets.UTF_8));
+            Assert.assertArrayEquals(expected, actual);
+        }
+    }
+
+    /**
+     * Every kind of character that JSON or UTF-8 treats specially, null strings, and the extremes of every number
+     * field must come out exactly as Jackson wrote them.
+     */
+    @Test
+    public void matchesJacksonOnEdgeCases() throws Exception {
+        String special = "quote \" backslash \\ slash / \b\f\n\r\t \u0000\u001f\u007f \u00e9\u07ff\u0800\uffff"
+                + " \u2028\u2029 \ud83d\ude00 lone \ud800 and \udc00 end \ud83d";
+        assertSameBytes(new Message(1, 1, "test message 1", 1669947792L));
+        assertSameBytes(new Message(Integer.MAX_VALUE, Integer.MIN_VALUE, special, Long.MIN_VALUE));
+        assertSameBytes(new Message(-1, 0, "", Long.MAX_VALUE));
+        assertSameBytes(new Message());
+        assertSameBytes(new Account(1, "testuser1", "password"));
+        assertSameBytes(new Account(Integer.MIN_VALUE, special, null));
+        assertSameBytes(new Account());
+        assertSameBytes(Collections.emptyList());
+        assertSameBytes(Arrays.asList(new Message(1, 1, special, 0), new Message(2, 1, "x", 10)));
+        assertSameBytes(new MessagePage(Collections.singletonList(new Message(1, 1, "a", 1)), "MTIzOjQ1"));
+        assertSameBytes(new MessagePage(Collections.emptyList(), null));
+        assertSameBytes(new MessagePage(null, special));
+    }
+
+    /**
+     * Random text drawn from every range of UTF-16, long enough to grow the buffer past what a thread keeps, must
+     * match Jackson byte for byte.
+     */
+    @Test
+    public void matchesJacksonOnRandomText() throws Exception {
+        Random random = new Random(7);
+        char[] pool = {'a', 'Z', '0', ' ', '"', '\\', '\n', '\u0001', '\u007f', '\u00ff', '\u0800', '\u4e2d',
+                '\ud83d', '\ude00', '\ud800', '\udfff', '\ufffd'};
+        for (int round = 0; round < 2000; round++) {
+            List<Message> messages = new ArrayList<>();
+            int count = random.nextInt(round % 100 == 0 ? 2000 : 5);
+            for (int i = 0; i < count; i++) {
+                char[] text = new char[random.nextInt(64)];
+                for (int j = 0; j < text.length; j++) {
+                    text[j] = random.nextBoolean()
+                            ? pool[random.nextInt(pool.length)] : (char) random.nextInt(0x10000);
+                }
+                messages.add(new Message(random.nextInt(), random.nextInt(), new String(text), random.nextLong()));
+            }
+            assertSameBytes(messages);
+            if (!messages.isEmpty()) {
+                Message first = messages.get(0);
+                assertSameBytes(first);
+                assertSameBytes(new Account(first.getMessage_id(), first.getMessage_text(), first.getMessage_text()));
+            }
+        }
+    }
+
+    /**
+     * ModelJsonMapper must write the models itself and leave every other type, including lists that hold anything
+     * but messages, and all reading to Jackson.
+     */
+    @Test
+    public void mapperFallsBackToJackson() throws Exception {
+        ModelJsonMapper mapper = new ModelJsonMapper(new JavalinJackson(objectMapper));
+        AccountStats stats = new AccountStats(1, 2, 3L, null, 4.5);
+        Assert.assertFalse(ModelJsonWriter.supports(stats));
+        Assert.assertEquals(objectMapper.writeValueAsString(stats), mapper.toJsonString(stats, AccountStats.class));
+
+        List<Object> mixed = Arrays.asList(new Message(1, 1, "a", 1), "not a message");
+        Assert.assertFalse(ModelJsonWriter.supports(mixed));
+        Assert.assertEquals(objectMapper.writeValueAsString(mixed), mapper.toJsonString(mixed, List.class));
+
+        Message message = new Message(1, 1, "caf\u00e9", 1669947792L);
+        Assert.assertArrayEquals(jackson(message), mapper.toJsonBytes(message, Message.class));
+        Assert.assertArrayEquals(jackson(message), mapper.toJsonStream(message, Message.class).readAllBytes());
+        Message read = mapper.fromJsonString(mapper.toJsonString(message, Message.class), Message.class);
+        Assert.assertEquals(message, read);
+    }
+}
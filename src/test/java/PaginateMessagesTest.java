@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PaginateMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, create a new webClient and ObjectMapper, and
+     * post three more messages so that there are four in total.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        for (int i = 2; i <= 4; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"test message " + i + "\", " +
+                            "\"time_posted_epoch\": " + (1669947790 + i) + "}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages?limit=3 and then following next_cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the first three messages by time_posted_epoch with a cursor, then the last one without
+     */
+    @Test
+    public void getAllMessagesPaged() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages?limit=3");
+        Assert.assertEquals(200, first.statusCode());
+        MessagePage firstPage = objectMapper.readValue(first.body(), MessagePage.class);
+
+        List<Message> expectedFirst = new ArrayList<>();
+        expectedFirst.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedFirst.add(new Message(2, 1, "test message 2", 1669947792));
+        expectedFirst.add(new Message(3, 1, "test message 3", 1669947793));
+        Assert.assertEquals(expectedFirst, firstPage.getMessages());
+        Assert.assertNotNull(firstPage.getNext_cursor());
+
+        HttpResponse<String> second = get("/messages?limit=3&cursor=" + firstPage.getNext_cursor());
+        Assert.assertEquals(200, second.statusCode());
+        MessagePage secondPage = objectMapper.readValue(second.body(), MessagePage.class);
+
+        List<Message> expectedSecond = new ArrayList<>();
+        expectedSecond.add(new Message(4, 1, "test message 4", 1669947794));
+        Assert.assertEquals(expectedSecond, secondPage.getMessages());
+        Assert.assertNull(secondPage.getNext_cursor());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/2/messages?limit=2 (no messages for user)
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: an empty page without a cursor
+     */
+    @Test
+    public void getMessagesByUserPagedEmpty() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/accounts/2/messages?limit=2");
+        Assert.assertEquals(200, response.statusCode());
+        MessagePage page = objectMapper.readValue(response.body(), MessagePage.class);
+        Assert.assertTrue(page.getMessages().isEmpty());
+        Assert.assertNull(page.getNext_cursor());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with a cursor that was not issued by the server
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body:
+     */
+    @Test
+    public void getAllMessagesInvalidCursor() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages?limit=2&cursor=not-a-cursor");
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals("", response.body());
+    }
+}
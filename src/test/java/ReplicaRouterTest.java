@@ -0,0 +1,265 @@
+import java.io.FileReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.h2.tools.RunScript;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ReplicaRouter;
+
+public class ReplicaRouterTest {
+    DataSource primary;
+    DataSource replicaA;
+    DataSource replicaB;
+
+    /**
+     * Before every test, create a primary from the SocialMedia.sql script and two empty replicas, each a private
+     * in-memory database.
+     */
+    @Before
+    public void setUp() throws Exception {
+        primary = dataSource("routerprimary");
+        replicaA = dataSource("routerreplicaA");
+        replicaB = dataSource("routerreplicaB");
+        try (Connection conn = primary.getConnection()) {
+            RunScript.execute(conn, new FileReader("src/main/resources/SocialMedia.sql"));
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        for (DataSource source : new DataSource[]{primary, replicaA, replicaB}) {
+            try (Connection conn = source.getConnection()) {
+                conn.createStatement().execute("SHUTDOWN");
+            }
+        }
+    }
+
+    private static DataSource dataSource(String name) {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+        h2.setPassword("sa");
+        return h2;
+    }
+
+    private static int countMessages(Connection conn) throws SQLException {
+        try (conn) {
+            ResultSet rs = conn.prepareStatement("SELECT COUNT(*) FROM message").executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static void insertMessage(ReplicaRouter router) throws SQLException {
+        try (Connection conn = router.getWriteConnection()) {
+            PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (1, 'new', 1)");
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * A thread that wrote reads from the primary until the replicas catch up; other threads keep reading the
+     * replica, and are flagged as having read stale data.
+     */
+    @Test
+    public void readYourWrites() throws Exception {
+        ReplicaRouter router = new ReplicaRouter(primary, List.of(replicaA), ReplicaRouter.Selection.ROUND_ROBIN);
+        router.syncReplicas();
+        Assert.assertEquals(1, countMessages(router.getReadConnection()));
+        Assert.assertEquals(1, router.getReplicaReads(0));
+
+        insertMessage(router);
+        Assert.assertEquals(1, router.getWriteVersion());
+        Assert.assertEquals(2, countMessages(router.getReadConnection()));
+        Assert.assertEquals(1, router.getPrimaryReads());
+
+        int[] otherThread = new int[1];
+        boolean[] otherStale = new boolean[1];
+        Thread reader = new Thread(() -> {
+            try {
+                otherThread[0] = countMessages(router.getReadConnection());
+                otherStale[0] = router.hadStaleRead();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        reader.start();
+        reader.join();
+        Assert.assertEquals(1, otherThread[0]);
+        Assert.assertTrue(otherStale[0]);
+
+        router.syncReplicas();
+        Assert.assertEquals(0, router.getReplicationLag());
+        router.resetThread();
+        Assert.assertEquals(2, countMessages(router.getReadConnection()));
+        Assert.assertFalse(router.hadStaleRead());
+        Assert.assertEquals(3, router.getReplicaReads(0));
+    }
+
+    /**
+     * readLatest bypasses a lagging replica, and requireVersion carries a version over from another thread
+     */
+    @Test
+    public void readLatestAndRequiredVersion() throws Exception {
+        ReplicaRouter router = new ReplicaRouter(primary, List.of(replicaA), ReplicaRouter.Selection.ROUND_ROBIN);
+        router.syncReplicas();
+        insertMessage(router);
+        long written = router.getThreadVersion();
+        router.resetThread();
+
+        Assert.assertEquals(1, countMessages(router.getReadConnection()));
+        Assert.assertEquals(2, (int) router.readLatest(() -> {
+            try {
+                return countMessages(router.getReadConnection());
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+        Assert.assertEquals(0, router.getThreadVersion());
+
+        router.requireVersion(written);
+        Assert.assertEquals(2, countMessages(router.getReadConnection()));
+    }
+
+    /**
+     * Round-robin alternates between replicas; least-busy avoids a replica with a read in flight
+     */
+    @Test
+    public void replicaSelection() throws Exception {
+        ReplicaRouter roundRobin = new ReplicaRouter(primary, List.of(replicaA, replicaB),
+                ReplicaRouter.Selection.ROUND_ROBIN);
+        roundRobin.syncReplicas();
+        for (int i = 0; i < 4; i++) {
+            countMessages(roundRobin.getReadConnection());
+        }
+        Assert.assertEquals(2, roundRobin.getReplicaReads(0));
+        Assert.assertEquals(2, roundRobin.getReplicaReads(1));
+
+        ReplicaRouter leastBusy = new ReplicaRouter(primary, List.of(replicaA, replicaB),
+                ReplicaRouter.Selection.LEAST_BUSY);
+        leastBusy.syncReplicas();
+        Connection held = leastBusy.getReadConnection();
+        try {
+            Assert.assertEquals(1, leastBusy.getReplicaReads(0));
+            for (int i = 0; i < 3; i++) {
+                countMessages(leastBusy.getReadConnection());
+            }
+            Assert.assertEquals(1, leastBusy.getReplicaReads(0));
+            Assert.assertEquals(3, leastBusy.getReplicaReads(1));
+        } finally {
+            held.close();
+        }
+    }
+
+    /**
+     * A write run directly on a Statement counts as a write on the primary, and is refused on a read connection
+     */
+    @Test
+    public void writesThroughPlainStatements() throws Exception {
+        ReplicaRouter router = new ReplicaRouter(primary, List.of(replicaA), ReplicaRouter.Selection.ROUND_ROBIN);
+        router.syncReplicas();
+        try (Connection conn = router.getWriteConnection(); Statement statement = conn.createStatement()) {
+            statement.executeUpdate("UPDATE message SET message_text = 'changed' WHERE message_id = 1");
+        }
+        Assert.assertEquals(1, router.getWriteVersion());
+
+        router.resetThread();
+        router.syncReplicas();
+        try (Connection conn = router.getReadConnection(); Statement statement = conn.createStatement()) {
+            Assert.assertThrows(SQLException.class,
+                    () -> statement.execute("DELETE FROM message WHERE message_id = 1"));
+            ResultSet rs = statement.executeQuery("SELECT message_text FROM message WHERE message_id = 1");
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals("changed", rs.getString(1));
+        }
+        Assert.assertEquals(1, router.getReplicaReads(0));
+    }
+
+    /**
+     * Streaming messages the way forEachMessage does, with lazy query execution switched on and off around the
+     * query, is a read: on the primary it records no write and leaves the replicas fresh, and a replica allows it
+     */
+    @Test
+    public void streamedReadIsNotAWrite() throws Exception {
+        ReplicaRouter router = new ReplicaRouter(primary, List.of(replicaA), ReplicaRouter.Selection.ROUND_ROBIN);
+        router.syncReplicas();
+        Assert.assertEquals(1, streamMessages(router.getWriteConnection()));
+        Assert.assertEquals(0, router.getWriteVersion());
+        Assert.assertEquals(0, router.getReplicationLag());
+        Assert.assertEquals(0, router.getThreadVersion());
+
+        Assert.assertEquals(1, streamMessages(router.getReadConnection()));
+        Assert.assertEquals(1, router.getReplicaReads(0));
+        Assert.assertEquals(0, router.getWriteVersion());
+    }
+
+    private static int streamMessages(Connection conn) throws SQLException {
+        try (conn) {
+            Statement session = conn.createStatement();
+            session.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            int count = 0;
+            try {
+                PreparedStatement ps = conn.prepareStatement("SELECT * FROM message ORDER BY message_id");
+                ps.setFetchSize(256);
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    count++;
+                }
+            } finally {
+                session.execute("SET LAZY_QUERY_EXECUTION FALSE");
+            }
+            return count;
+        }
+    }
+
+    /**
+     * A sync leaves a replica alone while a read is open on it, routes new reads elsewhere meanwhile, and
+     * rewrites it once the read has closed; a read that outlasts the drain time makes the sync skip the replica
+     */
+    @Test
+    public void syncWaitsForReadsInFlight() throws Exception {
+        ReplicaRouter router = new ReplicaRouter(primary, List.of(replicaA), ReplicaRouter.Selection.ROUND_ROBIN);
+        router.syncReplicas();
+        insertMessage(router);
+        router.resetThread();
+
+        Connection held = router.getReadConnection();
+        Thread syncer = new Thread(router::syncReplicas);
+        syncer.start();
+        Thread.sleep(200);
+        Assert.assertTrue(syncer.isAlive());
+        // the replica is out of rotation, so this read goes to the primary
+        Assert.assertEquals(2, countMessages(router.getReadConnection()));
+        Assert.assertEquals(1, router.getPrimaryReads());
+        Assert.assertEquals(1, countMessages(held));
+        syncer.join(5000);
+        Assert.assertFalse(syncer.isAlive());
+        Assert.assertEquals(0, router.getReplicationLag());
+        Assert.assertEquals(2, countMessages(router.getReadConnection()));
+
+        ReplicaRouter impatient = new ReplicaRouter(primary, List.of(replicaB), ReplicaRouter.Selection.ROUND_ROBIN,
+                100);
+        impatient.syncReplicas();
+        insertMessage(impatient);
+        impatient.resetThread();
+        try (Connection stillOpen = impatient.getReadConnection()) {
+            impatient.syncReplicas();
+            Assert.assertEquals(1, impatient.getReplicationLag());
+            Assert.assertEquals(2, countMessages(stillOpen));
+        }
+        impatient.syncReplicas();
+        Assert.assertEquals(0, impatient.getReplicationLag());
+    }
+}
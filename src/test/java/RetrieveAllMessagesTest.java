@@ -100,8 +100,7 @@ public class RetrieveAllMessagesTest {
 
 
     private void removeInitialMessage(){
-        try {
-                Connection conn = ConnectionUtil.getConnection();
+        try (Connection conn = ConnectionUtil.getConnection()) {
                 PreparedStatement ps = conn.prepareStatement("delete from message where message_id = ?");
                 ps.setInt(1, 1);
                 ps.executeUpdate();
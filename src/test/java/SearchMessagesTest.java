@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, create a new webClient and ObjectMapper, and
+     * post three more messages so that there are four in total.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        String[] texts = {"Cats and dogs", "Dogs only, please!", "birds sing at dawn"};
+        for (int i = 0; i < texts.length; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"" + texts[i] + "\", " +
+                            "\"time_posted_epoch\": " + (1669947800 + i) + "}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> search(String query) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search?q=" + query.replace(" ", "%20")))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Integer> searchIds(String query) throws IOException, InterruptedException {
+        HttpResponse<String> response = search(query);
+        Assert.assertEquals(200, response.statusCode());
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){})) {
+            ids.add(message.getMessage_id());
+        }
+        return ids;
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages/search with single terms, AND and OR queries
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the matching messages newest first, matched case-insensitively on whole words
+     */
+    @Test
+    public void searchTermsAndOr() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(3, 2), searchIds("DOGS"));
+        Assert.assertEquals(List.of(2), searchIds("dogs cats"));
+        Assert.assertEquals(List.of(4, 2), searchIds("cats OR birds"));
+        Assert.assertEquals(List.of(3, 2, 1), searchIds("message OR dogs"));
+        Assert.assertEquals(List.of(), searchIds("dog"));
+        Assert.assertEquals(List.of(3, 2), searchIds("message OR dogs&limit=2"));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/search?q=dogs&limit=1 after the newest dogs message was changed behind
+     * the index's back, straight in the database
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the next newest match instead of the stale one, so the page is still full
+     */
+    @Test
+    public void staleMatchIsReplaced() throws Exception {
+        try (Connection conn = ConnectionUtil.getConnection()) {
+            conn.createStatement().execute("UPDATE message SET message_text = 'no pets' WHERE message_id = 3");
+        }
+        Assert.assertEquals(List.of(2), searchIds("dogs&limit=1"));
+        Assert.assertEquals(List.of(2), searchIds("dogs"));
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages/search after a message was updated and one deleted
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: results reflect the new text and leave out the deleted message
+     */
+    @Test
+    public void searchFollowsUpdateAndDelete() throws IOException, InterruptedException {
+        HttpRequest patch = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"birds only\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(patch, HttpResponse.BodyHandlers.ofString());
+        HttpRequest delete = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/4"))
+                .DELETE()
+                .build();
+        webClient.send(delete, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(List.of(), searchIds("cats"));
+        Assert.assertEquals(List.of(2), searchIds("birds"));
+        Assert.assertEquals(List.of(3), searchIds("dogs"));
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages/search with a query that has no terms
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body: empty
+     */
+    @Test
+    public void searchWithoutTerms() throws IOException, InterruptedException {
+        HttpResponse<String> response = search("OR !");
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals("", response.body());
+        Assert.assertEquals(400, webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search")).build(),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
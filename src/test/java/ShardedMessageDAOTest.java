@@ -0,0 +1,241 @@
+import java.io.FileReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.h2.tools.RunScript;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.ShardedMessageDAO;
+import Model.Message;
+import Util.PageCursor;
+import Util.ReplicaRouter;
+
+public class ShardedMessageDAOTest {
+    List<DataSource> shards;
+    ShardedMessageDAO dao;
+
+    /**
+     * Before every test, create shard 0 from the SocialMedia.sql script with five more accounts, and two empty
+     * shards, each a private in-memory database.
+     */
+    @Before
+    public void setUp() throws Exception {
+        shards = List.of(dataSource("shard0"), dataSource("shard1"), dataSource("shard2"));
+        resetShardZero();
+        dao = new ShardedMessageDAO(shards);
+    }
+
+    /**
+     * Runs the SocialMedia.sql script on shard 0, as ConnectionUtil.resetTestDatabase does, and adds the five
+     * accounts.
+     */
+    private void resetShardZero() throws Exception {
+        try (Connection conn = shards.get(0).getConnection()) {
+            RunScript.execute(conn, new FileReader("src/main/resources/SocialMedia.sql"));
+            for (int i = 2; i <= 6; i++) {
+                conn.createStatement().execute(
+                        "INSERT INTO account (username, password) VALUES ('testuser" + i + "', 'password')");
+            }
+        }
+    }
+
+    private int userOnShard(int shard) {
+        for (int user = 1; user <= 6; user++) {
+            if (dao.shardForUser(user) == shard) {
+                return user;
+            }
+        }
+        throw new AssertionError("no test user on shard " + shard);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        for (DataSource source : shards) {
+            try (Connection conn = source.getConnection()) {
+                conn.createStatement().execute("SHUTDOWN");
+            }
+        }
+    }
+
+    private static DataSource dataSource(String name) {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+        h2.setPassword("sa");
+        return h2;
+    }
+
+    /**
+     * Every account's messages land on that account's shard, with IDs that point back to the shard, and can be
+     * read, updated and deleted by ID. The message created before sharding stays readable on shard 0.
+     */
+    @Test
+    public void routesWritesAndLookupsByShardTest() {
+        for (int user = 1; user <= 6; user++) {
+            Message created = dao.insertMessage(new Message(user, "from " + user, 1669947800L + user));
+            Assert.assertNotNull(created);
+            Assert.assertEquals(dao.shardForUser(user), dao.shardForMessage(created.getMessage_id()));
+            Assert.assertEquals(created, dao.getMessageById(created.getMessage_id()));
+            Assert.assertEquals(user == 1 ? 2 : 1, dao.getMessagesByUser(user).size());
+
+            Assert.assertEquals(created, dao.updateMessage(created.getMessage_id(), "updated " + user));
+            Message updated = dao.getMessageById(created.getMessage_id());
+            Assert.assertEquals("updated " + user, updated.getMessage_text());
+            Assert.assertEquals(updated, dao.deleteMessage(created.getMessage_id()));
+            Assert.assertNull(dao.getMessageById(created.getMessage_id()));
+        }
+
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792L), dao.getMessageById(1));
+        Assert.assertNull(dao.insertMessage(new Message(99, "no such account", 1669947800L)));
+    }
+
+    /**
+     * Reads over every user return the messages of all shards in the same order as the unsharded DAO.
+     */
+    @Test
+    public void mergesReadsAcrossShardsTest() {
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            batch.add(new Message(1 + i % 6, "message " + i, 1669947800L + (i * 7) % 30));
+        }
+        Message[] inserted = dao.insertMessages(batch);
+        Assert.assertEquals(30, inserted.length);
+
+        List<Message> all = dao.getAllMessages();
+        Assert.assertEquals(31, all.size());
+        for (int i = 1; i < all.size(); i++) {
+            Assert.assertTrue(all.get(i - 1).getMessage_id() < all.get(i).getMessage_id());
+        }
+
+        List<Message> streamed = new ArrayList<>();
+        dao.forEachMessage(null, streamed::add);
+        Assert.assertEquals(all, streamed);
+
+        List<Message> page = dao.getMessagesPage(null, null, 10);
+        Assert.assertEquals(10, page.size());
+        for (int i = 1; i < page.size(); i++) {
+            Assert.assertTrue(page.get(i - 1).getTime_posted_epoch() <= page.get(i).getTime_posted_epoch());
+        }
+        Assert.assertEquals(1669947792L, page.get(0).getTime_posted_epoch());
+
+        List<Message> range = dao.getMessagesByTime(null, 1669947800L, 1669947810L);
+        Assert.assertEquals(10, range.size());
+        for (int i = 1; i < range.size(); i++) {
+            Assert.assertTrue(range.get(i - 1).getTime_posted_epoch() < range.get(i).getTime_posted_epoch());
+        }
+
+        int[] ids = {inserted[0].getMessage_id(), inserted[1].getMessage_id(), inserted[2].getMessage_id()};
+        Assert.assertEquals(3, dao.getMessagesByIds(ids).size());
+    }
+
+    /**
+     * A batch spread over several shards reports each entry on its own, leaving out unknown accounts.
+     */
+    @Test
+    public void batchInsertAcrossShardsTest() {
+        Message[] inserted = dao.insertMessages(List.of(
+                new Message(2, "a", 1669947800L),
+                new Message(99, "b", 1669947801L),
+                new Message(3, "c", 1669947802L),
+                new Message(4, "d", 1669947803L)));
+
+        Assert.assertNotNull(inserted[0]);
+        Assert.assertNull(inserted[1]);
+        Assert.assertNotNull(inserted[2]);
+        Assert.assertNotNull(inserted[3]);
+        Assert.assertEquals(dao.shardForUser(3), dao.shardForMessage(inserted[2].getMessage_id()));
+        Assert.assertEquals(4, dao.getAllMessages().size());
+    }
+
+    /**
+     * Recreating shard 0's tables from the schema script, as every test reset does, must not cost shard 0 its
+     * stride: its new messages still get IDs that point back to it, and never the IDs of the script's own rows.
+     */
+    @Test
+    public void strideSurvivesSchemaResetTest() throws Exception {
+        int user = userOnShard(0);
+        Message before = dao.insertMessage(new Message(user, "before reset", 1669947800L));
+        Assert.assertEquals(0, dao.shardForMessage(before.getMessage_id()));
+
+        resetShardZero();
+        Message first = dao.insertMessage(new Message(user, "after reset", 1669947801L));
+        Message second = dao.insertMessage(new Message(user, "after reset again", 1669947802L));
+        Assert.assertEquals(0, dao.shardForMessage(first.getMessage_id()));
+        Assert.assertEquals(0, dao.shardForMessage(second.getMessage_id()));
+        Assert.assertTrue(first.getMessage_id() > 1);
+        Assert.assertNotEquals(first.getMessage_id(), second.getMessage_id());
+        Assert.assertEquals(first, dao.getMessageById(first.getMessage_id()));
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792L), dao.getMessageById(1));
+
+        ShardedMessageDAO restarted = new ShardedMessageDAO(shards);
+        Message third = restarted.insertMessage(new Message(user, "after restart", 1669947803L));
+        Assert.assertEquals(0, restarted.shardForMessage(third.getMessage_id()));
+        Assert.assertTrue(third.getMessage_id() > second.getMessage_id());
+    }
+
+    /**
+     * With a replica in front of shard 0, reads of shard 0 go to the replica while it is fresh, and a write to
+     * shard 0 is recorded by the router, so the writer's next read sees it.
+     */
+    @Test
+    public void shardZeroGoesThroughReplicaRouterTest() throws Exception {
+        DataSource replica = dataSource("replica0");
+        try {
+            ReplicaRouter router = new ReplicaRouter(shards.get(0), List.of(replica),
+                    ReplicaRouter.Selection.ROUND_ROBIN);
+            router.syncReplicas();
+            ShardedMessageDAO routed = new ShardedMessageDAO(shards, router);
+
+            Assert.assertEquals(1, routed.getMessagesPage(null, null, 10).size());
+            Assert.assertEquals(1, router.getReplicaReads(0));
+            Assert.assertEquals(0, router.getPrimaryReads());
+
+            long version = router.getWriteVersion();
+            Message created = routed.insertMessage(new Message(userOnShard(0), "routed", 1669947800L));
+            Assert.assertEquals(version + 1, router.getWriteVersion());
+            Assert.assertEquals(2, routed.getMessagesPage(null, null, 10).size());
+            Assert.assertEquals(1, router.getPrimaryReads());
+            Assert.assertEquals(created, routed.getMessageById(created.getMessage_id()));
+            router.resetThread();
+        } finally {
+            try (Connection conn = replica.getConnection()) {
+                conn.createStatement().execute("SHUTDOWN");
+            }
+        }
+    }
+
+    /**
+     * A page across shards holds the first limit messages of all shards together, in order, however they are
+     * spread over the shards.
+     */
+    @Test
+    public void pageMergesShardsInOrderTest() {
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            batch.add(new Message(1 + i % 6, "message " + i, 1669947800L + (i * 13) % 40));
+        }
+        dao.insertMessages(batch);
+        List<Message> all = new ArrayList<>(dao.getAllMessages());
+        all.sort(Comparator.comparingLong(Message::getTime_posted_epoch).thenComparingInt(Message::getMessage_id));
+
+        List<Message> paged = new ArrayList<>();
+        PageCursor after = null;
+        List<Message> page;
+        while (!(page = dao.getMessagesPage(null, after, 7)).isEmpty()) {
+            Assert.assertTrue(page.size() <= 7);
+            paged.addAll(page);
+            Message last = page.get(page.size() - 1);
+            after = new PageCursor(last.getTime_posted_epoch(), last.getMessage_id());
+        }
+        Assert.assertEquals(all, paged);
+    }
+}
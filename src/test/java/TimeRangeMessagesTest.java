@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import Util.PageCursor;
+import io.javalin.Javalin;
+
+public class TimeRangeMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, create a new webClient and ObjectMapper, and
+     * post three more messages, one second apart, so that there are four in total.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        for (int i = 2; i <= 4; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"test message " + i + "\", " +
+                            "\"time_posted_epoch\": " + (1669947790 + i) + "}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending an HTTP GET request to "localhost:8080/messages?since=1669947793" and to
+     * "localhost:8080/accounts/1/messages?since=1669947792&until=1669947794"
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages posted from since up to, but not including, until, oldest first
+     */
+    @Test
+    public void getMessagesInTimeRange() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages?since=1669947793");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(List.of(
+                new Message(3, 1, "test message 3", 1669947793),
+                new Message(4, 1, "test message 4", 1669947794)),
+                objectMapper.readValue(response.body(), new TypeReference<List<Message>>() {}));
+
+        response = get("/accounts/1/messages?since=1669947792&until=1669947794");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(List.of(
+                new Message(1, 1, "test message 1", 1669947792),
+                new Message(2, 1, "test message 2", 1669947792),
+                new Message(3, 1, "test message 3", 1669947793)),
+                objectMapper.readValue(response.body(), new TypeReference<List<Message>>() {}));
+
+        Assert.assertEquals("[]", get("/messages?since=1669947794&until=1669947793").body());
+        Assert.assertEquals(400, get("/messages?since=yesterday").statusCode());
+    }
+
+    /**
+     * Sending an HTTP GET request to "localhost:8080/messages?since=1669947792&until=1669947794&limit=2" and
+     * following the cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: two pages holding the three messages in range, the second without a nextCursor
+     */
+    @Test
+    public void pageThroughTimeRange() throws IOException, InterruptedException {
+        String range = "/messages?since=1669947792&until=1669947794&limit=2";
+        MessagePage first = objectMapper.readValue(get(range).body(), MessagePage.class);
+        Assert.assertEquals(List.of(
+                new Message(1, 1, "test message 1", 1669947792),
+                new Message(2, 1, "test message 2", 1669947792)), first.getMessages());
+        Assert.assertNotNull(first.getNext_cursor());
+
+        MessagePage second = objectMapper.readValue(get(range + "&cursor=" + first.getNext_cursor()).body(),
+                MessagePage.class);
+        Assert.assertEquals(List.of(new Message(3, 1, "test message 3", 1669947793)), second.getMessages());
+        Assert.assertNull(second.getNext_cursor());
+    }
+
+    /**
+     * Sending an HTTP GET request to "localhost:8080/messages?since=1669947793&limit=10" with a cursor that points
+     * one second before since, between the two messages posted at 1669947792
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: only the messages posted at or after since
+     */
+    @Test
+    public void cursorBeforeSinceIsIgnored() throws IOException, InterruptedException {
+        String cursor = new PageCursor(1669947792, 1).encode();
+        MessagePage page = objectMapper.readValue(get("/messages?since=1669947793&limit=10&cursor=" + cursor).body(),
+                MessagePage.class);
+        Assert.assertEquals(List.of(
+                new Message(3, 1, "test message 3", 1669947793),
+                new Message(4, 1, "test message 4", 1669947794)), page.getMessages());
+    }
+
+    /**
+     * The range and page queries must be index range scans, so their cost follows the size of the range or page and
+     * not of the table, and the queries that stop at a limit must read the index in the order they return.
+     */
+    @Test
+    public void timeRangeQueriesUseIndexes() throws Exception {
+        String plan = explain(MessageDAO.TIME_RANGE_SQL, 1669947792L, 1669947794L);
+        Assert.assertTrue(plan, plan.contains("PUBLIC.MESSAGE_TIME_IDX: TIME_POSTED_EPOCH >= ?1"));
+        Assert.assertTrue(plan, plan.contains("/* index sorted */"));
+
+        plan = explain(MessageDAO.USER_TIME_RANGE_SQL, 1, 1669947792L, 1669947794L);
+        Assert.assertTrue(plan, plan.contains("PUBLIC.MESSAGE_POSTED_BY_TIME_IDX:"));
+        Assert.assertTrue(plan, plan.contains("POSTED_BY = ?1"));
+        Assert.assertTrue(plan, plan.contains("TIME_POSTED_EPOCH >= ?2"));
+
+        for (String edge : new String[]{MessageDAO.FIRST_MESSAGE_SQL, MessageDAO.LAST_MESSAGE_SQL}) {
+            plan = explain(edge, 1);
+            Assert.assertTrue(plan, plan.contains("_IDX: POSTED_BY = ?1"));
+            Assert.assertTrue(plan, plan.contains("/* index sorted */"));
+        }
+
+        plan = explain(MessageDAO.PAGE_SQL, 1669947792L, 1669947792L, 1, 10);
+        Assert.assertTrue(plan, plan.contains("PUBLIC.MESSAGE_TIME_IDX: TIME_POSTED_EPOCH >= ?1"));
+        Assert.assertTrue(plan, plan.contains("/* index sorted */"));
+
+        plan = explain(MessageDAO.USER_PAGE_SQL, 1, 1669947792L, 1669947792L, 1, 10);
+        Assert.assertTrue(plan, plan.contains("PUBLIC.MESSAGE_POSTED_BY_TIME_IDX:"));
+        Assert.assertTrue(plan, plan.contains("TIME_POSTED_EPOCH >= ?2"));
+        Assert.assertTrue(plan, plan.contains("/* index sorted */"));
+    }
+
+    private static String explain(String sql, Object... parameters) throws Exception {
+        try (Connection conn = ConnectionUtil.getConnection()) {
+            PreparedStatement ps = conn.prepareStatement("EXPLAIN " + sql);
+            for (int i = 0; i < parameters.length; i++) {
+                ps.setObject(i + 1, parameters[i]);
+            }
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class WriteBehindCreateMessageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app in write-behind mode, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("socialmedia.messages.writeMode", "async");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.messages.writeMode");
+    }
+
+    private HttpResponse<String> post(String body) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages with valid message credentials
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of message object, sent after the group commit
+     */
+    @Test
+    public void createMessageWriteBehindSuccessful() throws IOException, InterruptedException {
+        HttpResponse<String> response = post("{\"posted_by\":1, \"message_text\": \"hello message\", " +
+                "\"time_posted_epoch\": 1669947792}");
+        Assert.assertEquals(200, response.statusCode());
+        Message expectedResult = new Message(2, 1, "hello message", 1669947792);
+        Assert.assertEquals(expectedResult, objectMapper.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages with a user id that doesnt exist in db
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body:
+     */
+    @Test
+    public void createMessageWriteBehindUserNotInDb() throws IOException, InterruptedException {
+        HttpResponse<String> response = post("{\"posted_by\":3, \"message_text\": \"message test\", " +
+                "\"time_posted_epoch\": 1669947792}");
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals("", response.body());
+    }
+}